@@ -0,0 +1,726 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Banc de proves de rendiment dels camins calents de la cerca i l'avaluació.
+ *
+ * Segueix el model de JMH (iteracions d'escalfament i de mesura, resultat
+ * consumit per evitar que el JIT elimini el treball) però no necessita cap
+ * llibreria, de manera que funciona sense accés a la xarxa. Els resultats
+ * s'escriuen en JSON per poder comparar execucions i detectar regressions.
+ *
+ * Ús: ant bench, o bé
+ * java -cp ... edu.epsevg.prop.lab.c4.Benchmarks [fitxer.json] [profunditatMaxima]
+ *
+ * Amb ant comprova-avaluacio, o bé Benchmarks comprova-avaluacio [llavor],
+ * només comprova que AvaluadorIncremental puntua igual que el recorregut
+ * sencer del tauler, i falla a la primera diferència. Amb ant comprova-memoria,
+ * o bé Benchmarks comprova-memoria [profunditat], només comprova que la cerca
+ * escalfada no reserva memòria, i falla a la primera posició que en reservi.
+ * Amb ant comprova-ponderacio, o bé Benchmarks comprova-ponderacio, només
+ * comprova que aturaCerca fa tornar de seguida un moviment que espera una
+ * ponderació encertada amb profunditat fixa.
+ */
+public class Benchmarks {
+    // Posicions fixes donades com a seqüència de columnes jugades des del tauler buit
+    static final String[][] POSICIONS = {
+        {"obertura", "3443"},
+        {"migjoc", "33165530613036744263"},
+        {"final", "53205443064133373611336511457446750647704001"}
+    };
+
+    private static final int ITERACIONS_ESCALFAMENT = 2;
+    private static final int ITERACIONS_MESURA = 5;
+    private static final long NANOS_PER_ITERACIO = 200000000L; // 200 ms per iteració de les microproves
+    private static final long NANOS_PER_ITERACIO_CERCA = 1000000000L; // 1 s per iteració de les cerques
+    private static final int CERQUES_ESCALFAMENT_MEMORIA = 1000; // Cerques abans de comptar la memòria, perquè el JIT hi hagi passat
+    private static final int CERQUES_MEMORIA = 50;
+    private static final int PLAYOUTS_MCTS = 50000; // Simulacions per moviment de MctsPlayer
+    private static final int PROFUNDITAT_FULLES = 6; // Cerca amb què es mesuren les fulles per segon de cada avaluador
+    private static final int MIDA_TAULA_GRAN_MB = 256; // Taula per comparar el heap amb la memòria directa
+    private static final int PROFUNDITAT_TAULES = 8; // Amb cerques més curtes, buidar la taula gran costa més que cercar
+    private static final int PROFUNDITAT_MEMORIA = 8; // Cerca de la comprovació de memòria
+    private static final int PARTIDES_COMPROVACIO = 20000; // Seqüències aleatòries de la comprovació de l'avaluador
+    private static final int MOVIMENTS_COMPROVACIO = 200; // Fitxes posades o tretes per seqüència
+    private static final int PROFUNDITAT_PONDERACIO = 16; // Des de l'obertura, la ponderació sencera dura més d'un segon
+    private static final long MS_ABANS_ATURAR = 300; // Temps que es deixa ponderar abans de cridar aturaCerca
+    private static final long MS_MAXIM_ATURADA = 250; // Temps màxim per tornar després d'aturaCerca
+
+    private static volatile long sumidor; // Consumeix els resultats perquè el JIT no els elimini
+
+    /**
+     * Operació mesurada; retorna un valor que es consumeix.
+     */
+    interface Operacio {
+        long executa();
+    }
+
+    /**
+     * Resultat d'una prova: mitjana i desviació de les iteracions de mesura.
+     */
+    static class Resultat {
+        final String nom;
+        final String parametres;
+        final String unitat;
+        final double mitjana;
+        final double desviacio;
+        final int iteracions;
+
+        Resultat(String nom, String parametres, String unitat, double[] mostres) {
+            this.nom = nom;
+            this.parametres = parametres;
+            this.unitat = unitat;
+            this.iteracions = mostres.length;
+            double suma = 0;
+            for (double m : mostres) suma += m;
+            mitjana = suma / mostres.length;
+            double var = 0;
+            for (double m : mostres) var += (m - mitjana) * (m - mitjana);
+            desviacio = mostres.length > 1 ? Math.sqrt(var / (mostres.length - 1)) : 0;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("comprova-avaluacio")) {
+            comprovaAvaluacio(args.length > 1 ? Long.parseLong(args[1]) : 1L);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("comprova-memoria")) {
+            comprovaMemoria(args.length > 1 ? Integer.parseInt(args[1]) : PROFUNDITAT_MEMORIA);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("comprova-ponderacio")) {
+            comprovaPonderacio();
+            return;
+        }
+        String sortida = args.length > 0 ? args[0] : "resultats-benchmarks.json";
+        int profunditatMaxima = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        List<Resultat> resultats = new ArrayList<>();
+        for (String[] pos : POSICIONS) {
+            for (int p = 4; p <= profunditatMaxima; p++) {
+                resultats.add(mesuraCerca(pos, p));
+            }
+            resultats.addAll(mesuraCercaParalela(pos, Math.min(8, profunditatMaxima)));
+            resultats.addAll(mesuraOrdenacio(pos, Math.min(8, profunditatMaxima)));
+            resultats.addAll(mesuraPVS(pos, Math.min(8, profunditatMaxima)));
+            resultats.addAll(mesuraEstrategies(pos, Math.min(6, profunditatMaxima)));
+            resultats.add(mesuraAmenaces(pos, Math.min(8, profunditatMaxima)));
+            resultats.addAll(mesuraSimetria(pos, Math.min(8, profunditatMaxima)));
+            resultats.add(mesuraMcts(pos));
+        }
+        resultats.addAll(mesuraTaules(POSICIONS[0], PROFUNDITAT_TAULES, MIDA_TAULA_GRAN_MB));
+        for (String[] pos : POSICIONS) {
+            resultats.addAll(mesuraAvaluacio(pos));
+            resultats.addAll(mesuraTauler(pos));
+        }
+        resultats.addAll(mesuraFullesPerSegon(POSICIONS[0]));
+
+        for (String[] pos : POSICIONS) {
+            Resultat r = mesuraMemoriaCerca(pos, Math.min(PROFUNDITAT_MEMORIA, profunditatMaxima));
+            if (r != null) resultats.add(r);
+        }
+
+        escriuJson(resultats, sortida);
+        for (Resultat r : resultats) {
+            System.out.printf("%-32s %-32s %14.1f +- %-10.1f %s%n", r.nom, r.parametres, r.mitjana, r.desviacio, r.unitat);
+        }
+        System.out.println("Resultats escrits a " + sortida);
+    }
+
+    /**
+     * Comprova que la cerca escalfada no reserva memòria a cap de les
+     * posicions fixes. Només fa l'escalfament i la mesura de
+     * mesuraMemoriaCerca, sense la resta del banc.
+     * @param profunditat Profunditat de les cerques.
+     * @throws IllegalStateException A la primera posició on la cerca reserva
+     *         memòria, o si la JVM no sap comptar la memòria per fil.
+     */
+    static void comprovaMemoria(int profunditat) {
+        for (String[] pos : POSICIONS) {
+            Resultat r = mesuraMemoriaCerca(pos, profunditat);
+            if (r == null) {
+                throw new IllegalStateException("La JVM no sap comptar la memòria reservada per cada fil");
+            }
+            if (r.mitjana > 0) {
+                throw new IllegalStateException("La cerca reserva memòria: " + r.parametres + " " + r.mitjana + " " + r.unitat);
+            }
+            System.out.println("Sense reserves de memòria: " + r.parametres);
+        }
+    }
+
+    /**
+     * Comprova que "Mou ara" funciona quan el rival juga la resposta prevista
+     * i el moviment espera la ponderació: un jugador amb profunditat fixa i
+     * ponderació cerca la primera posició fins que té una columna amb la
+     * seva variació, el rival juga la resposta prevista i, mentre el
+     * moviment següent espera la ponderació, es crida aturaCerca. El moviment ha de tornar en menys de
+     * MS_MAXIM_ATURADA amb la columna de la ponderació.
+     * @throws IllegalStateException Si el moviment no torna a temps, no
+     *         aprofita la ponderació o torna una columna no jugable.
+     */
+    static void comprovaPonderacio() {
+        MinimaxPlayer jugador = new MinimaxPlayer(PROFUNDITAT_PONDERACIO, false);
+        jugador.setPonderacio(true);
+        ExecutorService fil = Executors.newSingleThreadExecutor();
+        try {
+            String moviments = POSICIONS[0][1];
+            Tauler t = tauler(moviments);
+            int color = color(moviments);
+            // Amb la primera columna de l'arrel ja hi ha variació que ponderar
+            jugador.setReceptorProgres((c, p, nodes, nodesPerSegon) -> {
+                if (c >= 0) jugador.aturaCerca();
+            });
+            int col = jugador.moviment(t, color);
+            jugador.setReceptorProgres(null);
+            int[] variacio = jugador.getEstadistiques().getVariacioPrincipal();
+            if (variacio.length < 2 || variacio[0] != col) {
+                throw new IllegalStateException("El primer moviment no preveu cap resposta del rival");
+            }
+            t.afegeix(col, color);
+            t.afegeix(variacio[1], -color);
+
+            long inici = System.nanoTime();
+            int columna = mouAturant(jugador, t, color, fil);
+            double ms = (System.nanoTime() - inici) / 1e6 - MS_ABANS_ATURAR;
+            if (jugador.getEncertsPonderacio() != 1 || !jugador.getEstadistiques().isPonderada()) {
+                throw new IllegalStateException("El moviment no ha aprofitat la ponderació");
+            }
+            if (!t.movpossible(columna)) {
+                throw new IllegalStateException("La ponderació aturada torna la columna no jugable " + columna);
+            }
+            System.out.printf(java.util.Locale.ROOT, "Ponderació aturada en %.1f ms: columna %d%n", ms, columna);
+        } finally {
+            jugador.setPonderacio(false);
+            fil.shutdownNow();
+        }
+    }
+
+    /**
+     * Demana un moviment en un altre fil i, passats MS_ABANS_ATURAR, crida
+     * aturaCerca.
+     * @return La columna, si el moviment torna com a molt MS_MAXIM_ATURADA després.
+     */
+    private static int mouAturant(MinimaxPlayer jugador, Tauler t, int color, ExecutorService fil) {
+        Future<Integer> moviment = fil.submit(() -> jugador.moviment(t, color));
+        try {
+            Thread.sleep(MS_ABANS_ATURAR);
+            jugador.aturaCerca();
+            return moviment.get(MS_MAXIM_ATURADA, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            throw new IllegalStateException("El moviment no ha tornat " + MS_MAXIM_ATURADA + " ms després d'aturaCerca");
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new IllegalStateException("Error esperant el moviment", ex);
+        }
+    }
+
+    /**
+     * Nodes per segon de MinimaxPlayer amb la taula de transposicions buida a cada cerca.
+     */
+    private static Resultat mesuraCerca(String[] pos, int profunditat) {
+        TaulaTransposicio taula = new TaulaTransposicio(16, TaulaTransposicio.Reemplacament.PROFUNDITAT);
+        MinimaxPlayer jugador = new MinimaxPlayer(profunditat, false, taula, new AvaluadorIncremental());
+        double[] mostres = iteracionsCerca(jugador, taula, pos[1], true);
+        return new Resultat("cerca.nodesPerSegon", "posicio=" + pos[0] + " profunditat=" + profunditat, "nodes/s", mostres);
+    }
+
+    /**
+     * Temps per cerca amb un sol fil i amb la cerca paral·lela a l'arrel, i
+     * l'acceleració que en resulta amb els processadors disponibles.
+     */
+    private static List<Resultat> mesuraCercaParalela(String[] pos, int profunditat) {
+        TaulaTransposicio taula = new TaulaTransposicio(16, TaulaTransposicio.Reemplacament.PROFUNDITAT);
+        MinimaxPlayer sequencial = new MinimaxPlayer(profunditat, false, taula, new AvaluadorIncremental());
+        double[] tempsSequencial = iteracionsCerca(sequencial, taula, pos[1], false);
+
+        MinimaxPlayer paralel = new MinimaxPlayer(profunditat, false, taula, new AvaluadorIncremental());
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        paralel.setExecutor(pool);
+        double[] tempsParalel = iteracionsCerca(paralel, taula, pos[1], false);
+        pool.shutdown();
+
+        double[] acceleracio = new double[tempsParalel.length];
+        for (int i = 0; i < acceleracio.length; i++) {
+            acceleracio[i] = tempsSequencial[i] / tempsParalel[i];
+            tempsSequencial[i] /= 1e6;
+            tempsParalel[i] /= 1e6;
+        }
+        String parametres = "posicio=" + pos[0] + " profunditat=" + profunditat + " fils=" + pool.getParallelism();
+        List<Resultat> res = new ArrayList<>();
+        res.add(new Resultat("cerca.tempsSequencial", parametres, "ms", tempsSequencial));
+        res.add(new Resultat("cerca.tempsParalel", parametres, "ms", tempsParalel));
+        res.add(new Resultat("cerca.acceleracioParalela", parametres, "x", acceleracio));
+        return res;
+    }
+
+    /**
+     * Efecte de l'ordenació de moviments a igual profunditat: quantes vegades
+     * menys nodes visita la cerca i quina proporció de podes fa el primer
+     * moviment, amb i sense ordenació. Són mesures deterministes, no de temps.
+     */
+    private static List<Resultat> mesuraOrdenacio(String[] pos, int profunditat) {
+        Tauler t = tauler(pos[1]);
+        int color = color(pos[1]);
+        SearchStats[] stats = new SearchStats[2];
+        for (int k = 0; k < 2; k++) {
+            MinimaxPlayer jugador = new MinimaxPlayer(profunditat, false);
+            jugador.setOrdenacioMoviments(k == 1);
+            sumidor += jugador.moviment(t, color);
+            stats[k] = jugador.getEstadistiques();
+        }
+        String param = "posicio=" + pos[0] + " profunditat=" + profunditat;
+        List<Resultat> res = new ArrayList<>();
+        res.add(new Resultat("ordenacio.reduccioNodes", param, "x",
+                new double[]{(double) stats[0].getNodes() / stats[1].getNodes()}));
+        res.add(new Resultat("ordenacio.ratiTallsSense", param, "ratio", new double[]{stats[0].getRatiTalls()}));
+        res.add(new Resultat("ordenacio.ratiTallsAmb", param, "ratio", new double[]{stats[1].getRatiTalls()}));
+        return res;
+    }
+
+    /**
+     * Nodes que s'estalvien la cerca de variació principal a igual
+     * profunditat, i les finestres d'aspiració en un aprofundiment iteratiu
+     * fins a la mateixa profunditat (amb temps de sobres perquè no s'aturi).
+     */
+    private static List<Resultat> mesuraPVS(String[] pos, int profunditat) {
+        Tauler t = tauler(pos[1]);
+        int color = color(pos[1]);
+        long[] nodes = new long[4];
+        for (int k = 0; k < 4; k++) {
+            MinimaxPlayer jugador = (k < 2) ? new MinimaxPlayer(profunditat, false) : new MinimaxPlayer(profunditat, 3600000L);
+            jugador.setReceptorEstadistiques(null);
+            jugador.setEstrategia(k == 1 ? EstrategiaCerca.PVS : EstrategiaCerca.ALFA_BETA);
+            jugador.setAspiracio(k == 3);
+            sumidor += jugador.moviment(t, color);
+            nodes[k] = jugador.getEstadistiques().getNodes();
+        }
+        String param = "posicio=" + pos[0] + " profunditat=" + profunditat;
+        List<Resultat> res = new ArrayList<>();
+        res.add(new Resultat("pvs.reduccioNodes", param, "x", new double[]{(double) nodes[0] / nodes[1]}));
+        res.add(new Resultat("aspiracio.reduccioNodes", param, "x", new double[]{(double) nodes[2] / nodes[3]}));
+        return res;
+    }
+
+    /**
+     * Nodes que visita cada estratègia de cerca a igual profunditat. Totes
+     * escullen la mateixa columna; si no, el banc s'atura.
+     */
+    private static List<Resultat> mesuraEstrategies(String[] pos, int profunditat) {
+        Tauler t = tauler(pos[1]);
+        int color = color(pos[1]);
+        List<Resultat> res = new ArrayList<>();
+        int columna = -1;
+        for (EstrategiaCerca e : EstrategiaCerca.values()) {
+            MinimaxPlayer jugador = new MinimaxPlayer(profunditat, false);
+            jugador.setEstrategia(e);
+            int col = jugador.moviment(t, color);
+            if (columna >= 0 && col != columna) {
+                throw new IllegalStateException("L'estratègia " + e + " tria una altra columna a " + pos[0]);
+            }
+            columna = col;
+            res.add(new Resultat("estrategia.nodes", "posicio=" + pos[0] + " profunditat=" + profunditat
+                    + " estrategia=" + e, "nodes", new double[]{jugador.getEstadistiques().getNodes()}));
+        }
+        return res;
+    }
+
+    /**
+     * Nodes que s'estalvia la detecció d'amenaces abans d'expandir cada node,
+     * a igual profunditat.
+     */
+    private static Resultat mesuraAmenaces(String[] pos, int profunditat) {
+        Tauler t = tauler(pos[1]);
+        int color = color(pos[1]);
+        long[] nodes = new long[2];
+        for (int k = 0; k < 2; k++) {
+            MinimaxPlayer jugador = new MinimaxPlayer(profunditat, false);
+            jugador.setPodaAmenaces(k == 1);
+            sumidor += jugador.moviment(t, color);
+            nodes[k] = jugador.getEstadistiques().getNodes();
+        }
+        return new Resultat("amenaces.reduccioNodes", "posicio=" + pos[0] + " profunditat=" + profunditat, "x",
+                new double[]{(double) nodes[0] / nodes[1]});
+    }
+
+    /**
+     * Proporció de consultes a la taula de transposicions que troben la
+     * posició i nodes visitats, sense i amb les posicions reflectides
+     * compartint entrada.
+     */
+    private static List<Resultat> mesuraSimetria(String[] pos, int profunditat) {
+        Tauler t = tauler(pos[1]);
+        int color = color(pos[1]);
+        List<Resultat> res = new ArrayList<>();
+        for (int k = 0; k < 2; k++) {
+            MinimaxPlayer jugador = new MinimaxPlayer(profunditat, false);
+            jugador.setSimetria(k == 1);
+            sumidor += jugador.moviment(t, color);
+            SearchStats e = jugador.getEstadistiques();
+            String parametres = "posicio=" + pos[0] + " profunditat=" + profunditat + " simetria=" + (k == 1);
+            res.add(new Resultat("simetria.encertsTaula", parametres, "ratio", new double[]{e.getRatiEncertsTaula()}));
+            res.add(new Resultat("simetria.nodes", parametres, "nodes", new double[]{e.getNodes()}));
+        }
+        return res;
+    }
+
+    /**
+     * Simulacions per segon de MctsPlayer en un sol fil.
+     */
+    private static Resultat mesuraMcts(String[] pos) {
+        Tauler t = tauler(pos[1]);
+        int color = color(pos[1]);
+        MctsPlayer jugador = new MctsPlayer(PLAYOUTS_MCTS, 0, 1);
+        for (int i = 0; i < ITERACIONS_ESCALFAMENT; i++) {
+            sumidor += jugador.moviment(t, color);
+        }
+        double[] mostres = new double[ITERACIONS_MESURA];
+        for (int i = 0; i < ITERACIONS_MESURA; i++) {
+            sumidor += jugador.moviment(t, color);
+            mostres[i] = jugador.getEstadistiques().getPlayoutsPerSegon();
+        }
+        return new Resultat("mcts.playoutsPerSegon", "posicio=" + pos[0] + " playouts=" + PLAYOUTS_MCTS,
+                "playouts/s", mostres);
+    }
+
+    /**
+     * Taula gran al heap contra la mateixa taula fora del heap: durada d'un GC
+     * complet amb la taula viva, temps de GC durant les cerques i nodes per
+     * segon de la cerca que la fa servir.
+     */
+    private static List<Resultat> mesuraTaules(String[] pos, int profunditat, int megabytes) {
+        List<Resultat> res = new ArrayList<>();
+        for (int k = 0; k < 2; k++) {
+            boolean directa = k == 1;
+            TaulaTransposicioAbstracta taula = directa
+                    ? new TaulaTransposicioDirecta(megabytes, TaulaTransposicio.Reemplacament.PROFUNDITAT)
+                    : new TaulaTransposicio(megabytes, TaulaTransposicio.Reemplacament.PROFUNDITAT);
+            String parametres = "taula=" + (directa ? "directa" : "heap") + " megabytes=" + megabytes;
+
+            double[] pauses = new double[ITERACIONS_MESURA];
+            for (int it = 0; it < ITERACIONS_MESURA; it++) {
+                long t0 = System.nanoTime();
+                System.gc();
+                pauses[it] = (System.nanoTime() - t0) / 1e6;
+            }
+            res.add(new Resultat("taula.pausaGcComplet", parametres, "ms", pauses));
+
+            MinimaxPlayer jugador = new MinimaxPlayer(profunditat, false, taula, new AvaluadorIncremental());
+            long gcAbans = tempsGc();
+            double[] mostres = iteracionsCerca(jugador, taula, pos[1], true);
+            double[] gc = {tempsGc() - gcAbans};
+            res.add(new Resultat("taula.nodesPerSegon", parametres + " posicio=" + pos[0] + " profunditat=" + profunditat, "nodes/s", mostres));
+            res.add(new Resultat("taula.tempsGcCerques", parametres + " posicio=" + pos[0] + " profunditat=" + profunditat, "ms", gc));
+            sumidor += taula.getCapacitat();
+        }
+        return res;
+    }
+
+    /**
+     * Temps acumulat de tots els recol·lectors de la JVM, en ms.
+     */
+    private static long tempsGc() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(gc.getCollectionTime(), 0);
+        }
+        return total;
+    }
+
+    /**
+     * Bytes reservats per cerca pel fil que cerca, amb un jugador i una taula
+     * reaprofitats, després d'escalfar el JIT. Ha de ser 0: la cerca i
+     * l'avaluació treballen només amb tipus primitius i arrays ja creats.
+     * @return El resultat, o null si la JVM no sap comptar la memòria per fil.
+     */
+    private static Resultat mesuraMemoriaCerca(String[] pos, int profunditat) {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean fils = (com.sun.management.ThreadMXBean) mx;
+        if (!fils.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        fils.setThreadAllocatedMemoryEnabled(true);
+        long fil = Thread.currentThread().getId();
+
+        Tauler t = tauler(pos[1]);
+        int color = color(pos[1]);
+        TaulaTransposicio taula = new TaulaTransposicio(16, TaulaTransposicio.Reemplacament.PROFUNDITAT);
+        MinimaxPlayer jugador = new MinimaxPlayer(profunditat, false, taula, new AvaluadorIncremental());
+        for (int i = 0; i < CERQUES_ESCALFAMENT_MEMORIA; i++) {
+            taula.buida();
+            sumidor += jugador.moviment(t, color);
+        }
+
+        // El que reserva la pròpia consulta del comptador es descompta
+        long buit = fils.getThreadAllocatedBytes(fil);
+        long consulta = fils.getThreadAllocatedBytes(fil) - buit;
+        double[] mostres = new double[ITERACIONS_MESURA];
+        for (int it = 0; it < ITERACIONS_MESURA; it++) {
+            long abans = fils.getThreadAllocatedBytes(fil);
+            for (int i = 0; i < CERQUES_MEMORIA; i++) {
+                taula.buida();
+                sumidor += jugador.moviment(t, color);
+            }
+            long reservats = fils.getThreadAllocatedBytes(fil) - abans - consulta;
+            mostres[it] = (double) Math.max(reservats, 0) / CERQUES_MEMORIA;
+        }
+        return new Resultat("memoria.bytesPerCerca", "posicio=" + pos[0] + " profunditat=" + profunditat, "bytes", mostres);
+    }
+
+    /**
+     * Fa les iteracions d'una prova de cerca. Cada mostra és nodes/s o bé
+     * nanosegons per cerca, segons nodesPerSegon.
+     */
+    private static double[] iteracionsCerca(MinimaxPlayer jugador, TaulaTransposicioAbstracta taula, String moviments, boolean nodesPerSegon) {
+        Tauler t = tauler(moviments);
+        int color = color(moviments);
+        double[] mostres = new double[ITERACIONS_MESURA];
+        for (int it = -ITERACIONS_ESCALFAMENT; it < ITERACIONS_MESURA; it++) {
+            long nodes = 0, nanos = 0, cerques = 0;
+            // El rellotge de paret limita la iteració: quan les amenaces resolen la
+            // posició la cerca dura microsegons i buidar la taula costa molt més
+            long inici = System.nanoTime();
+            while (cerques == 0 || System.nanoTime() - inici < NANOS_PER_ITERACIO_CERCA) {
+                taula.buida();
+                sumidor += jugador.moviment(t, color);
+                nodes += jugador.getEstadistiques().getNodes();
+                nanos += jugador.getEstadistiques().getNanosegons();
+                cerques++;
+            }
+            if (it >= 0) {
+                mostres[it] = nodesPerSegon ? nodes * 1e9 / nanos : (double) nanos / cerques;
+            }
+        }
+        return mostres;
+    }
+
+    /**
+     * Comprova que l'avaluació incremental és la mateixa que la del
+     * recorregut sencer del tauler. Fa seqüències aleatòries de fitxes posades
+     * i tretes, com les de la cerca, i compara les dues puntuacions després de
+     * cada moviment.
+     * @param llavor Llavor de les seqüències, per poder repetir una diferència.
+     * @throws IllegalStateException A la primera posició on no coincideixen.
+     */
+    static void comprovaAvaluacio(long llavor) {
+        Random r = new Random(llavor);
+        AvaluadorIncremental incremental = new AvaluadorIncremental();
+        int[] columnes = new int[Posicio.MIDA * Posicio.MIDA];
+        long comprovacions = 0;
+        for (int partida = 0; partida < PARTIDES_COMPROVACIO; partida++) {
+            Posicio p = new Posicio(new Tauler(Posicio.MIDA));
+            incremental.inicia(p, r.nextBoolean() ? 1 : -1);
+            int n = 0;
+            int color = 1;
+            for (int m = 0; m < MOVIMENTS_COMPROVACIO; m++) {
+                // Més fitxes posades que tretes, perquè s'arribi a taulers plens
+                if (n > 0 && (!p.espotmoure() || r.nextInt(10) < 3)) {
+                    p.treu(columnes[--n]);
+                    incremental.treu();
+                    color = -color;
+                } else {
+                    int col;
+                    do {
+                        col = r.nextInt(Posicio.MIDA);
+                    } while (!p.movpossible(col));
+                    p.afegeix(col, color);
+                    incremental.afegeix(p, col);
+                    columnes[n++] = col;
+                    color = -color;
+                }
+                int esperat = incremental.avaluarTauler(p);
+                int obtingut = incremental.avalua(p);
+                if (obtingut != esperat) {
+                    StringBuilder seq = new StringBuilder();
+                    for (int i = 0; i < n; i++) seq.append(columnes[i]);
+                    throw new IllegalStateException("L'avaluació incremental dona " + obtingut + " i el recorregut sencer "
+                            + esperat + " (llavor=" + llavor + " partida=" + partida + " columnes=" + seq + ")");
+                }
+                comprovacions++;
+            }
+        }
+        System.out.println("Avaluació incremental correcta en " + comprovacions + " posicions (llavor=" + llavor + ")");
+    }
+
+    /**
+     * Cost d'avaluar una fulla amb cada heurística.
+     */
+    private static List<Resultat> mesuraAvaluacio(String[] pos) {
+        final Posicio p = posicio(pos[1]);
+        final int color = color(pos[1]);
+        final AvaluadorIncremental incremental = new AvaluadorIncremental();
+        incremental.inicia(p, color);
+        final AvaluadorFinestres finestres = new AvaluadorFinestres();
+        finestres.inicia(p, color);
+        final Evaluator vectorial = AvaluadorFinestres.vectorial();
+        vectorial.inicia(p, color);
+        final int[] columna = {0};
+
+        List<Resultat> res = new ArrayList<>();
+        String param = "posicio=" + pos[0];
+        res.add(mesura("avaluacio.recorregutSencer", param, () -> incremental.avaluarTauler(p)));
+        res.add(mesura("avaluacio.incremental", param, () -> {
+            // Una fulla: posar la fitxa, avaluar i desfer, com fa la cerca
+            int c = seguentColumna(p, columna);
+            p.afegeix(c, color);
+            incremental.afegeix(p, c);
+            long v = incremental.avalua(p);
+            incremental.treu();
+            p.treu(c);
+            return v;
+        }));
+        res.add(mesura("avaluacio.finestres", param, () -> finestres.avalua(p)));
+        // Si la JVM no té la Vector API, vectorial() torna l'avaluador escalar
+        String paramVectorial = param + " avaluador=" + vectorial.getClass().getSimpleName();
+        res.add(mesura("avaluacio.vectorial", paramVectorial, () -> vectorial.avalua(p)));
+        return res;
+    }
+
+    /**
+     * Fulles avaluades per segon per una cerca de MinimaxPlayer amb
+     * l'avaluador de finestres escalar i amb el vectorial, comptant també la
+     * cerca que porta fins a les fulles. Només té sentit en una posició on la
+     * cerca arriba a les fulles sense que les amenaces la resolguin abans.
+     */
+    private static List<Resultat> mesuraFullesPerSegon(String[] pos) {
+        List<Resultat> res = new ArrayList<>();
+        res.add(mesuraFullesPerSegon(pos, new AvaluadorFinestres()));
+        res.add(mesuraFullesPerSegon(pos, AvaluadorFinestres.vectorial()));
+        return res;
+    }
+
+    private static Resultat mesuraFullesPerSegon(String[] pos, Evaluator avaluador) {
+        Tauler t = tauler(pos[1]);
+        int color = color(pos[1]);
+        TaulaTransposicio taula = new TaulaTransposicio(16, TaulaTransposicio.Reemplacament.PROFUNDITAT);
+        MinimaxPlayer jugador = new MinimaxPlayer(PROFUNDITAT_FULLES, false, taula, avaluador);
+        String parametres = "posicio=" + pos[0] + " avaluador=" + avaluador.getClass().getSimpleName();
+        double[] mostres = new double[ITERACIONS_MESURA];
+        for (int it = -ITERACIONS_ESCALFAMENT; it < ITERACIONS_MESURA; it++) {
+            long fulles = 0, nanos = 0;
+            // El rellotge de paret limita la iteració: buidar la taula costa més que una cerca curta
+            long inici = System.nanoTime();
+            while (System.nanoTime() - inici < NANOS_PER_ITERACIO) {
+                taula.buida();
+                sumidor += jugador.moviment(t, color);
+                fulles += jugador.getEstadistiques().getFullesAvaluades();
+                nanos += jugador.getEstadistiques().getNanosegons();
+            }
+            if (it >= 0) {
+                mostres[it] = fulles * 1e9 / nanos;
+            }
+        }
+        return new Resultat("avaluacio.fullesPerSegon", parametres + " profunditat=" + PROFUNDITAT_FULLES, "fulles/s", mostres);
+    }
+
+    /**
+     * Cost de les operacions bàsiques de Tauler i de la Posicio que el substitueix a la cerca.
+     */
+    private static List<Resultat> mesuraTauler(String[] pos) {
+        final Tauler t = tauler(pos[1]);
+        final Posicio p = posicio(pos[1]);
+        final int color = color(pos[1]);
+        final int darrera = pos[1].charAt(pos[1].length() - 1) - '0';
+        final int[] columna = {0};
+
+        List<Resultat> res = new ArrayList<>();
+        String param = "posicio=" + pos[0];
+        res.add(mesura("tauler.copia", param, () -> new Tauler(t).getMida()));
+        res.add(mesura("tauler.copiaIAfegeix", param, () -> {
+            Tauler aux = new Tauler(t);
+            int c = seguentColumna(p, columna);
+            aux.afegeix(c, color);
+            return c;
+        }));
+        res.add(mesura("tauler.solucio", param, () -> t.solucio(darrera, -color) ? 1 : 0));
+        res.add(mesura("posicio.afegeixITreu", param, () -> {
+            int c = seguentColumna(p, columna);
+            p.afegeix(c, color);
+            p.treu(c);
+            return c;
+        }));
+        res.add(mesura("posicio.solucio", param, () -> p.solucio(darrera, -color) ? 1 : 0));
+        return res;
+    }
+
+    /**
+     * Mesura una microprova en nanosegons per operació.
+     */
+    private static Resultat mesura(String nom, String parametres, Operacio op) {
+        double[] mostres = new double[ITERACIONS_MESURA];
+        for (int it = -ITERACIONS_ESCALFAMENT; it < ITERACIONS_MESURA; it++) {
+            long operacions = 0, acumulat = 0;
+            long inici = System.nanoTime(), ara = inici;
+            while (ara - inici < NANOS_PER_ITERACIO) {
+                for (int i = 0; i < 1000; i++) {
+                    acumulat += op.executa();
+                }
+                operacions += 1000;
+                ara = System.nanoTime();
+            }
+            sumidor += acumulat;
+            if (it >= 0) {
+                mostres[it] = (double) (ara - inici) / operacions;
+            }
+        }
+        return new Resultat(nom, parametres, "ns/op", mostres);
+    }
+
+    private static int seguentColumna(Posicio p, int[] columna) {
+        do {
+            columna[0] = (columna[0] + 1) % Posicio.MIDA;
+        } while (!p.movpossible(columna[0]));
+        return columna[0];
+    }
+
+    private static Tauler tauler(String moviments) {
+        Tauler t = new Tauler(Posicio.MIDA);
+        int color = 1;
+        for (char c : moviments.toCharArray()) {
+            t.afegeix(c - '0', color);
+            color = -color;
+        }
+        return t;
+    }
+
+    private static Posicio posicio(String moviments) {
+        return new Posicio(tauler(moviments));
+    }
+
+    private static int color(String moviments) {
+        return (moviments.length() % 2 == 0) ? 1 : -1;
+    }
+
+    private static void escriuJson(List<Resultat> resultats, String fitxer) throws IOException {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(fitxer), StandardCharsets.UTF_8))) {
+            out.println("[");
+            for (int i = 0; i < resultats.size(); i++) {
+                Resultat r = resultats.get(i);
+                out.printf(java.util.Locale.ROOT,
+                        "  {\"benchmark\": \"%s\", \"parametres\": \"%s\", \"unitat\": \"%s\", \"mitjana\": %.3f, \"desviacio\": %.3f, \"iteracions\": %d}%s%n",
+                        r.nom, r.parametres, r.unitat, r.mitjana, r.desviacio, r.iteracions,
+                        i + 1 < resultats.size() ? "," : "");
+            }
+            out.println("]");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package edu.epsevg.prop.lab.c4;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Heurística de finestres de quatre caselles calculada amb la Vector API.
+ *
+ * Puntua igual que AvaluadorFinestres, però sense recórrer les finestres una
+ * a una. Cada carril d'un vector de 256 bits (un registre AVX2) és una de les
+ * quatre direccions, i cada bit del carril és la finestra que comença en
+ * aquella casella: desplaçant les fitxes 0, 1, 2 i 3 passos de la direcció
+ * del carril, les quatre caselles de totes les finestres queden alineades, i
+ * unes quantes operacions lògiques sumen les fitxes de les 130 finestres
+ * alhora. Al final només cal comptar els bits de les finestres amb una, dues
+ * i tres fitxes d'un sol color.
+ *
+ * Depèn del mòdul jdk.incubator.vector (Java 16 o més, amb
+ * --add-modules jdk.incubator.vector), així que es compila a part, des de
+ * src-vector, i la resta del codi no hi fa referència: s'obté amb
+ * AvaluadorFinestres.vectorial(), que torna l'avaluador escalar si el mòdul
+ * no hi és.
+ */
+public class AvaluadorVectorial implements Evaluator {
+    private static final int HEURISTICA_MAXIMA = Integer.MAX_VALUE;
+    private static final VectorSpecies<Long> ESPECIE = LongVector.SPECIES_256; // Un carril per direcció
+
+    // Per carril: el pas d'una casella a la següent de la finestra (vertical,
+    // horitzontal, diagonal i antidiagonal) i les caselles on comença una finestra
+    private static final long[] PASSOS = {1, Posicio.MIDA, Posicio.MIDA + 1, Posicio.MIDA - 1};
+    private static final long[] INICIS = inicis();
+    private static final LongVector PAS = LongVector.fromArray(ESPECIE, PASSOS, 0);
+    private static final LongVector INICI = LongVector.fromArray(ESPECIE, INICIS, 0);
+
+    private int colorJugador; // Color des del qual s'avalua
+    private final long[] carrils = new long[4]; // Per treure els carrils sense reservar memòria
+
+    @Override
+    public void inicia(Posicio t, int colorJugador) {
+        this.colorJugador = colorJugador;
+    }
+
+    @Override
+    public void afegeix(Posicio t, int col) {
+    }
+
+    @Override
+    public void treu() {
+    }
+
+    @Override
+    public int avalua(Posicio t) {
+        LongVector p0 = LongVector.broadcast(ESPECIE, t.getFitxes(colorJugador));
+        LongVector r0 = LongVector.broadcast(ESPECIE, t.getFitxes(-colorJugador));
+        LongVector dos = PAS.add(PAS);
+        LongVector tres = dos.add(PAS);
+        LongVector p1 = p0.lanewise(VectorOperators.LSHR, PAS);
+        LongVector p2 = p0.lanewise(VectorOperators.LSHR, dos);
+        LongVector p3 = p0.lanewise(VectorOperators.LSHR, tres);
+        LongVector r1 = r0.lanewise(VectorOperators.LSHR, PAS);
+        LongVector r2 = r0.lanewise(VectorOperators.LSHR, dos);
+        LongVector r3 = r0.lanewise(VectorOperators.LSHR, tres);
+
+        // Finestres sense cap fitxa de l'altre color
+        LongVector nomesPropies = INICI.and(r0.or(r1).or(r2).or(r3).not());
+        LongVector nomesRivals = INICI.and(p0.or(p1).or(p2).or(p3).not());
+
+        // Fitxes pròpies de cada finestra en binari (bit0, bit1, bit2)
+        LongVector ps1 = p0.lanewise(VectorOperators.XOR, p1), pc1 = p0.and(p1);
+        LongVector ps2 = p2.lanewise(VectorOperators.XOR, p3), pc2 = p2.and(p3);
+        LongVector pBit0 = ps1.lanewise(VectorOperators.XOR, ps2);
+        LongVector pPorta = ps1.and(ps2);
+        LongVector pBit1 = pc1.lanewise(VectorOperators.XOR, pc2).lanewise(VectorOperators.XOR, pPorta);
+        LongVector pQuatre = pc1.and(pc2).and(INICI);
+
+        LongVector rs1 = r0.lanewise(VectorOperators.XOR, r1), rc1 = r0.and(r1);
+        LongVector rs2 = r2.lanewise(VectorOperators.XOR, r3), rc2 = r2.and(r3);
+        LongVector rBit0 = rs1.lanewise(VectorOperators.XOR, rs2);
+        LongVector rPorta = rs1.and(rs2);
+        LongVector rBit1 = rc1.lanewise(VectorOperators.XOR, rc2).lanewise(VectorOperators.XOR, rPorta);
+        LongVector rQuatre = rc1.and(rc2).and(INICI);
+
+        if (pQuatre.reduceLanes(VectorOperators.OR) != 0) return HEURISTICA_MAXIMA;
+        if (rQuatre.reduceLanes(VectorOperators.OR) != 0) return -HEURISTICA_MAXIMA;
+
+        // Sense quatre fitxes, bit0 i bit1 distingeixen una, dues i tres
+        int res = compta(nomesPropies.and(pBit0).and(pBit1.not()))
+                + 10 * compta(nomesPropies.and(pBit1).and(pBit0.not()))
+                + 100 * compta(nomesPropies.and(pBit0).and(pBit1));
+        res -= compta(nomesRivals.and(rBit0).and(rBit1.not()))
+                + 10 * compta(nomesRivals.and(rBit1).and(rBit0.not()))
+                + 100 * compta(nomesRivals.and(rBit0).and(rBit1));
+        return res;
+    }
+
+    @Override
+    public Evaluator copia() {
+        return new AvaluadorVectorial();
+    }
+
+    /**
+     * Retorna quantes finestres avalua cada instrucció.
+     * @return Els bits d'un vector: 256, una finestra per casella i direcció.
+     */
+    public static int getFinestresPerInstruccio() {
+        return ESPECIE.vectorBitSize();
+    }
+
+    /**
+     * Compta les finestres marcades a tots els carrils. La Vector API de
+     * Java 17 no té el recompte de bits, així que es fa carril a carril.
+     */
+    private int compta(LongVector finestres) {
+        finestres.intoArray(carrils, 0);
+        return Long.bitCount(carrils[0]) + Long.bitCount(carrils[1])
+             + Long.bitCount(carrils[2]) + Long.bitCount(carrils[3]);
+    }
+
+    /**
+     * Casella inicial de cada finestra d'AvaluadorFinestres, al carril de la
+     * seva direcció: la finestra comença a la casella més baixa i la segona
+     * casella diu el pas.
+     */
+    private static long[] inicis() {
+        long[] res = new long[PASSOS.length];
+        for (long f : AvaluadorFinestres.getFinestres()) {
+            int inici = Long.numberOfTrailingZeros(f);
+            long pas = Long.numberOfTrailingZeros(f & ~(1L << inici)) - inici;
+            for (int d = 0; d < PASSOS.length; d++) {
+                if (PASSOS[d] == pas) {
+                    res[d] |= 1L << inici;
+                }
+            }
+        }
+        return res;
+    }
+}
@@ -0,0 +1,122 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.util.Arrays;
+
+/**
+ * Heurística basada en finestres de quatre caselles.
+ *
+ * Totes les finestres del tauler (horitzontals, verticals i diagonals) es
+ * calculen un sol cop com a màscares de bits. Per avaluar una posició es
+ * compten les fitxes de cada color a cada finestra amb Long.bitCount i la
+ * puntuació surt d'una taula d'enters indexada per (pròpies, rivals), sense
+ * Math.pow ni aritmètica d'índexs.
+ *
+ * AvaluadorVectorial fa els mateixos comptes amb la Vector API, diverses
+ * finestres per instrucció; vectorial() el crea quan la JVM ho permet.
+ */
+public class AvaluadorFinestres implements Evaluator {
+    private static final int HEURISTICA_MAXIMA = Integer.MAX_VALUE;
+    private static final int MIDA = Posicio.MIDA;
+
+    private static final long[] FINESTRES = calculaFinestres();
+
+    // PUNTS[propies * 5 + rivals]: una finestra amb fitxes dels dos colors no val res
+    private static final int[] PUNTS = new int[25];
+
+    static {
+        int[] potencia = {0, 1, 10, 100};
+        for (int k = 1; k < 4; k++) {
+            PUNTS[k * 5] = potencia[k];
+            PUNTS[k] = -potencia[k];
+        }
+    }
+
+    private int colorJugador; // Color des del qual s'avalua
+
+    @Override
+    public void inicia(Posicio t, int colorJugador) {
+        this.colorJugador = colorJugador;
+    }
+
+    @Override
+    public void afegeix(Posicio t, int col) {
+    }
+
+    @Override
+    public void treu() {
+    }
+
+    @Override
+    public int avalua(Posicio t) {
+        long propies = t.getFitxes(colorJugador);
+        long rivals = t.getFitxes(-colorJugador);
+        int res = 0;
+        for (long f : FINESTRES) {
+            int p = Long.bitCount(propies & f);
+            int r = Long.bitCount(rivals & f);
+            if (p == 4) return HEURISTICA_MAXIMA;
+            if (r == 4) return -HEURISTICA_MAXIMA;
+            res += PUNTS[p * 5 + r];
+        }
+        return res;
+    }
+
+    @Override
+    public Evaluator copia() {
+        return new AvaluadorFinestres();
+    }
+
+    /**
+     * Crea l'avaluador vectorial si la JVM té el mòdul jdk.incubator.vector
+     * (cal Java 16 o més i --add-modules jdk.incubator.vector). Si no, torna
+     * un AvaluadorFinestres, que puntua igual amb codi escalar. La classe es
+     * carrega per nom perquè es compila a part, amb Java 17.
+     * @return Un AvaluadorVectorial, o un AvaluadorFinestres si no es pot fer servir.
+     */
+    public static Evaluator vectorial() {
+        try {
+            Class<?> classe = Class.forName("edu.epsevg.prop.lab.c4.AvaluadorVectorial");
+            return (Evaluator) classe.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Classe no compilada, JVM massa antiga o mòdul absent
+            return new AvaluadorFinestres();
+        }
+    }
+
+    /**
+     * Retorna una còpia de les màscares de les finestres, amb el mateix
+     * format que Posicio.getFitxes.
+     * @return Les finestres.
+     */
+    static long[] getFinestres() {
+        return FINESTRES.clone();
+    }
+
+    /**
+     * Retorna el nombre de finestres de quatre caselles del tauler.
+     * @return 130 per a un tauler de 8x8.
+     */
+    public static int getNombreFinestres() {
+        return FINESTRES.length;
+    }
+
+    private static long[] calculaFinestres() {
+        int[][] direccions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}}; // {dCol, dFil}
+        long[] tmp = new long[4 * MIDA * MIDA];
+        int n = 0;
+        for (int[] d : direccions) {
+            for (int col = 0; col < MIDA; col++) {
+                for (int fil = 0; fil < MIDA; fil++) {
+                    int colFi = col + 3 * d[0], filFi = fil + 3 * d[1];
+                    if (colFi >= MIDA || filFi < 0 || filFi >= MIDA) continue;
+                    long m = 0;
+                    for (int k = 0; k < 4; k++) {
+                        m |= 1L << ((col + k * d[0]) * MIDA + fil + k * d[1]);
+                    }
+                    tmp[n++] = m;
+                }
+            }
+        }
+        return Arrays.copyOf(tmp, n);
+    }
+}
@@ -0,0 +1,398 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.util.Arrays;
+
+/**
+ * Avaluació heurística de MinimaxPlayer mantinguda de manera incremental.
+ *
+ * La puntuació del tauler és la suma de les puntuacions de cada línia
+ * (columnes, files i diagonals), i cada línia només depèn de les seves
+ * caselles. L'avaluador guarda la puntuació de cada línia i el total; quan es
+ * posa una fitxa només es tornen a puntuar les línies que hi passen (com a
+ * molt quatre), i en treure-la es recuperen els valors anteriors d'una pila.
+ * Així, avaluar una fulla és O(1).
+ */
+public class AvaluadorIncremental implements Evaluator {
+    final private int HEURISTICA_MAXIMA = Integer.MAX_VALUE; // Valor màxim per a l'heurística
+    private static final int MIDA = Posicio.MIDA;
+
+    // Tipus de línia
+    private static final int COLUMNA = 0;
+    private static final int FILA = 1;
+    private static final int DESCENDENT = 2;
+    private static final int ASCENDENT = 3;
+
+    private static final int MAX_LINIES = 2 * MIDA + 2 * (2 * MIDA - 6);
+    private static final int[] TIPUS = new int[MAX_LINIES];
+    private static final int[] FILA_INICI = new int[MAX_LINIES];
+    private static final int[] COL_INICI = new int[MAX_LINIES];
+    private static final int[] POTENCIES_DEU = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000, 1000000000};
+    private static final int[][] LINIES_CASELLA = new int[MIDA * MIDA][]; // Línies puntuades que passen per cada casella
+    private static final int NUM_LINIES;
+
+    static {
+        int[][] perCasella = new int[MIDA * MIDA][4];
+        int[] n = new int[MIDA * MIDA];
+        int l = 0;
+        for (int i = 0; i < MIDA; i++, l++) {
+            registraLinia(l, COLUMNA, 0, i, 1, 0, perCasella, n);
+        }
+        for (int i = 0; i < MIDA; i++, l++) {
+            registraLinia(l, FILA, i, 0, 0, 1, perCasella, n);
+        }
+        // Les mateixes diagonals, i en el mateix ordre, que recorre avaluarDiagonals
+        for (int col = MIDA - 4, fil = 0; fil < MIDA - 2; l++) {
+            registraLinia(l, DESCENDENT, fil, col, 1, 1, perCasella, n);
+            if (col > 0) col--; else fil++;
+        }
+        for (int col = 3, fil = 0; fil < MIDA - 2; l++) {
+            registraLinia(l, ASCENDENT, fil, col, 1, -1, perCasella, n);
+            if (col < MIDA - 1) col++; else fil++;
+        }
+        NUM_LINIES = l;
+        for (int c = 0; c < MIDA * MIDA; c++) {
+            LINIES_CASELLA[c] = Arrays.copyOf(perCasella[c], n[c]);
+        }
+    }
+
+    private static void registraLinia(int l, int tipus, int fil, int col, int dFil, int dCol, int[][] perCasella, int[] n) {
+        TIPUS[l] = tipus;
+        FILA_INICI[l] = fil;
+        COL_INICI[l] = col;
+        for (int f = fil, c = col; f < MIDA && c >= 0 && c < MIDA; f += dFil, c += dCol) {
+            int casella = c * MIDA + f;
+            perCasella[casella][n[casella]++] = l;
+        }
+    }
+
+    private int colorJugador; // Color des del qual s'avalua
+    private final int[] puntuacio = new int[MAX_LINIES]; // Puntuació actual de cada línia
+    private int total; // Suma de les puntuacions de totes les línies
+    private final int[] pila = new int[MIDA * MIDA * 4]; // Puntuacions anteriors de les línies tocades
+    private final int[] casellesPila = new int[MIDA * MIDA]; // Casella de cada moviment apilat
+    private int nivell; // Moviments apilats
+
+    /**
+     * Puntua totes les línies d'una posició; cal cridar-lo a l'arrel de cada cerca.
+     * @param t La posició.
+     * @param colorJugador Color del jugador des del qual s'avalua.
+     */
+    @Override
+    public void inicia(Posicio t, int colorJugador) {
+        this.colorJugador = colorJugador;
+        total = 0;
+        nivell = 0;
+        for (int l = 0; l < NUM_LINIES; l++) {
+            puntuacio[l] = puntuaLinia(t, l);
+            total += puntuacio[l];
+        }
+    }
+
+    /**
+     * Actualitza les línies afectades per la fitxa que s'acaba de posar.
+     * @param t La posició, amb la fitxa ja posada.
+     * @param col La columna on s'ha posat.
+     */
+    @Override
+    public void afegeix(Posicio t, int col) {
+        int casella = col * MIDA + t.getAltura(col) - 1;
+        int[] linies = LINIES_CASELLA[casella];
+        int base = nivell * 4;
+        for (int k = 0; k < linies.length; k++) {
+            int l = linies[k];
+            int nova = puntuaLinia(t, l);
+            pila[base + k] = puntuacio[l];
+            total += nova - puntuacio[l];
+            puntuacio[l] = nova;
+        }
+        casellesPila[nivell++] = casella;
+    }
+
+    /**
+     * Desfà l'última crida a afegeix.
+     */
+    @Override
+    public void treu() {
+        int[] linies = LINIES_CASELLA[casellesPila[--nivell]];
+        int base = nivell * 4;
+        for (int k = 0; k < linies.length; k++) {
+            int l = linies[k];
+            total += pila[base + k] - puntuacio[l];
+            puntuacio[l] = pila[base + k];
+        }
+    }
+
+    /**
+     * Retorna l'avaluació de la posició actual sense recórrer el tauler.
+     * @param t La posició actual, la mateixa que s'ha anat avisant.
+     * @return Puntuació heurística, igual que avaluarTauler.
+     */
+    @Override
+    public int avalua(Posicio t) {
+        return mirarHeuristica(total);
+    }
+
+    @Override
+    public Evaluator copia() {
+        return new AvaluadorIncremental();
+    }
+
+    /**
+     * Puntua una línia tal com ho fa avaluarTauler.
+     */
+    private int puntuaLinia(Posicio t, int l) {
+        switch (TIPUS[l]) {
+            case COLUMNA:
+                return avaluarColumna(t, COL_INICI[l]);
+            case FILA:
+                int fil = FILA_INICI[l];
+                return (10 * avaluarFila(t, fil) / (fil + 1));
+            case DESCENDENT:
+                return eD(t, COL_INICI[l], FILA_INICI[l], true);
+            default:
+                return eD(t, COL_INICI[l], FILA_INICI[l], false);
+        }
+    }
+
+    /**
+     * Avalua l'estat actual del tauler de joc recorrent totes les línies.
+     * És l'avaluació de referència: avalua() ha de donar sempre el mateix.
+     * @param t El tauler de joc actual.
+     * @return Puntuació heurística de l'estat actual del tauler.
+     */
+    int avaluarTauler(Posicio t) {
+        int res = 0;
+        res = mirarFiC(t, res);
+
+        res += avaluarDiagonals(t);
+
+        return mirarHeuristica(res);
+    }
+
+    private int mirarFiC(Posicio t, int res) {
+        for (int i = t.getMida() - 1; i >= 0; --i) {
+            res += avaluarColumna(t, i);
+            res += (10 * avaluarFila(t, i) / (i + 1));  // Ponderem segons l'alçada del 4 en ratlla horitzontal
+        }
+        return res;
+    }
+
+    private int mirarHeuristica(int res) {
+        if (res >= HEURISTICA_MAXIMA / 2) 
+            return HEURISTICA_MAXIMA;
+        if (res <= -HEURISTICA_MAXIMA / 2) 
+            return -HEURISTICA_MAXIMA;
+
+        return res;
+    }
+
+
+    private int avaluarColumna(Posicio t, int col) {
+        int first = 0, cont = 0, cont_buides = 0;
+
+        return eC(t, col, first, cont, cont_buides);
+    }
+
+    /**
+     * Ajuda en l'avaluació de la columna donada.
+     * @param t Tauler de joc.
+     * @param col Número de la columna a avaluar.
+     * @param first Primera fitxa trobada a la columna.
+     * @param cont Comptador de fitxes consecutives.
+     * @param cont_buides Comptador d'espais buits.
+     * @return Puntuació calculada per la columna.
+     */
+    private int eC(Posicio t, int col, int first, int cont, int cont_buides) {
+        for (int i = t.getMida() - 1; i >= 0; --i) {
+            int fitxa = t.getColor(i, col);
+            if (fitxa == 0) {
+                cont_buides++;
+                continue;
+            }
+
+            if (first == 0) {
+                first = fitxa;
+            }
+
+            if (first == fitxa) {
+                cont += fitxa;
+                if (bingo(cont)) {
+                    return colorJugador * first * HEURISTICA_MAXIMA;
+                }
+            } else {
+                break;
+            }
+        }
+
+        return calcHColumna(first, cont, cont_buides);
+    }
+
+    private boolean bingo(int cont) {
+        return cont > 3 || cont < -3;
+    }
+
+    private int calcHColumna(int first, int cont, int cont_buides) {
+        if (cont == 0 || cont_buides + first * cont < 4)
+            return 0;
+
+        return colorJugador * first * potenciaDeu(first * (cont - first));
+    }
+
+    /**
+     * Avalua les files del tauler.
+     * @param t Tauler de joc.
+     * @param fil Número de la fila a avaluar.
+     * @return Puntuació heurística de la fila.
+     */
+    private int avaluarFila(Posicio t, int fil) {
+        int cont_buides = 0, cont = 0, color_actual = 0, res = 0, color_aux = 0;
+
+        return mirarFila(t, fil, cont_buides, cont, color_actual, res, color_aux);
+    }
+
+    /**
+     * Processa la fila donada per determinar la seva puntuació.
+     * @param t Tauler de joc.
+     * @param fil Número de la fila a processar.
+     * @param cont_buides Comptador d'espais buits.
+     * @param cont Comptador de fitxes consecutives.
+     * @param color_actual Color de la fitxa actual.
+     * @param res Puntuació acumulada.
+     * @param color_aux Color auxiliar per a l'avaluació.
+     * @return Puntuació calculada per la fila.
+     */
+    private int mirarFila(Posicio t, int fil, int cont_buides, int cont, int color_actual, int res, int color_aux) {
+        for (int i = t.getMida() - 1; i >= 0; --i) {
+            int fitxa = t.getColor(fil, i);
+            if (fitxa == 0) {
+                res = estabuit(res, cont, cont_buides, color_actual, color_aux);
+                cont_buides++;
+                color_aux = (color_actual != 0) ? color_actual : color_aux;
+                color_actual = 0;
+            } else {
+                res = noestabuit(t, fil, i, res, cont, cont_buides, color_actual, color_aux, fitxa);
+                if (res == colorJugador * color_actual * HEURISTICA_MAXIMA) {
+                    return res;
+                }
+                color_actual = (color_actual == 0) ? fitxa : color_actual * -1;
+                cont = (fitxa == color_actual) ? ++cont : 1;
+                cont_buides = 0;
+            }
+
+            if (i == 0 && cont + cont_buides > 3) {
+                res += puntuacioH(colorJugador, color_actual, cont - 1);
+            }
+        }
+        return res;
+    }
+
+    private int estabuit(int res, int cont, int cont_buides, int color_actual, int color_aux) {
+        if (cont + cont_buides > 3) {
+            res += puntuacioH(colorJugador, (color_actual != 0) ? color_actual : color_aux, cont - 1);
+        }
+        return res;
+    }
+
+    private int noestabuit(Posicio t, int fil, int i, int res, int cont, int cont_buides, int color_actual, int color_aux, int fitxa) {
+        if (fitxa == color_actual) {
+            cont++;
+            if (cont > 3) {
+                return colorJugador * color_actual * HEURISTICA_MAXIMA;
+            }
+        } else {
+            res = estabuit(res, cont, cont_buides, color_actual, color_aux);
+        }
+        return res;
+    }
+
+    private int puntuacioH(int colorJugador, int color, int exponent) {
+        return colorJugador * color * potenciaDeu(exponent);
+    }
+
+    /**
+     * Avalua les diagonals del tauler per a determinar la millor jugada.
+     * Aquest mètode examina tant les diagonals ascendents com les descendents
+     * i calcula la puntuació basant-se en les oportunitats de connexió.
+     *
+     * @param t El tauler de joc.
+     * @return La puntuació heurística de les diagonals del tauler.
+     */
+    private int avaluarDiagonals(Posicio t) {
+        int res = 0;
+        // Evaluate descending diagonals
+        for (int col = t.getMida() - 4, fil = 0; fil < t.getMida() - 2; ) {
+            res += eD(t, col, fil, true);
+            if (col > 0) {
+                col--;
+            } else {
+                fil++;
+            }
+        }
+        // Evaluate ascending diagonals
+        for (int col = 3, fil = 0; fil < t.getMida() - 2; ) {
+            res += eD(t, col, fil, false);
+            if (col < t.getMida() - 1) {
+                col++;
+            } else {
+                fil++;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Ajuda en l'avaluació de la diagonal específica del tauler.
+     * Calcula la puntuació heurística basada en les seqüències de fitxes
+     * i els espais buits en una diagonal específica.
+     *
+     * @param t El tauler de joc.
+     * @param col La columna inicial de la diagonal a avaluar.
+     * @param fil La fila inicial de la diagonal a avaluar.
+     * @param isDescending Cert si la diagonal és descendent, fals si és ascendent.
+     * @return La puntuació heurística de la diagonal específica.
+     */
+    private int eD(Posicio t, int col, int fil, boolean isDescending) {
+        int cont_buides = 0, cont = 0, color_actual = 0, res = 0;
+        for (int i = 0; (isDescending ? i + col < t.getMida() : col - i >= 0) && i + fil < t.getMida(); i++) {
+            int fitxa = t.getColor(fil + i, isDescending ? col + i : col - i);
+            if (fitxa == 0) {
+                cont_buides++;
+                if (color_actual != 0 && cont + cont_buides > 3) {
+                    res += calcH(colorJugador, color_actual, cont);
+                }
+                color_actual = 0;
+            } else {
+                if (fitxa == color_actual) {
+                    cont++;
+                    if (cont > 3) {
+                        return colorJugador * color_actual * HEURISTICA_MAXIMA;
+                    }
+                } else {
+                    if (color_actual != 0 && cont + cont_buides > 3) {
+                        res += calcH(colorJugador, color_actual, cont);
+                    }
+                    color_actual = fitxa;
+                    cont = 1;
+                    cont_buides = 0;
+                }
+            }
+        }
+        if (color_actual != 0 && cont + cont_buides > 3) {
+            res += calcH(colorJugador, color_actual, cont);
+        }
+        return res;
+    }
+
+    private int calcH(int colorJugador, int color_actual, int cont) {
+        return colorJugador * color_actual * potenciaDeu(cont - 1);
+    }
+
+    /**
+     * Retorna 10^exponent sense passar per Math.pow. Els factors que la
+     * multipliquen valen -1, 0 o 1, així que un exponent negatiu dona 0, com
+     * el truncament a int de la versió amb doubles.
+     */
+    private static int potenciaDeu(int exponent) {
+        return (exponent < 0) ? 0 : POTENCIES_DEU[exponent];
+    }
+}
@@ -0,0 +1,116 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bolca periòdicament unes MetriquesJugador a un fitxer, en CSV o en JSON
+ * (un objecte per línia), per seguir un torneig llarg sense llegir la
+ * sortida estàndard. Cada bolcat afegeix una línia per jugador.
+ */
+public class BolcatMetriques implements AutoCloseable {
+
+    /**
+     * Format del fitxer.
+     */
+    public enum Format {
+        CSV, JSON
+    }
+
+    private static final String[] CAMPS = {
+        "instant", "jugador", "moviments", "latenciaMitjanaMs", "latenciaP50Ms", "latenciaP90Ms",
+        "latenciaP99Ms", "latenciaP999Ms", "latenciaMaximaMs", "nodes", "nodesPerSegon",
+        "factorRamificacio", "ratiTalls", "ratiTallsPrimerMoviment", "profunditatMitjana", "profunditatMaxima"
+    };
+
+    private final List<MetriquesJugador> metriques;
+    private final Format format;
+    private final PrintWriter sortida;
+    private final ScheduledExecutorService fil;
+
+    /**
+     * Comença a bolcar les mètriques.
+     * @param metriques Les mètriques a bolcar.
+     * @param fitxer Fitxer on s'afegeixen les línies.
+     * @param format CSV o JSON.
+     * @param segons Interval entre bolcats.
+     * @throws IOException Si no es pot obrir el fitxer.
+     */
+    public BolcatMetriques(List<MetriquesJugador> metriques, String fitxer, Format format, long segons) throws IOException {
+        this.metriques = metriques;
+        this.format = format;
+        this.sortida = new PrintWriter(new OutputStreamWriter(new FileOutputStream(fitxer, true), StandardCharsets.UTF_8));
+        if (format == Format.CSV) {
+            sortida.println(String.join(",", CAMPS));
+            sortida.flush();
+        }
+        fil = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bolcat-metriques");
+            t.setDaemon(true);
+            return t;
+        });
+        fil.scheduleAtFixedRate(this::bolca, segons, segons, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Escriu una línia per jugador amb els valors actuals.
+     */
+    public synchronized void bolca() {
+        long instant = System.currentTimeMillis();
+        for (MetriquesJugador m : metriques) {
+            Object[] valors = {
+                instant, m.getNom(), m.getMoviments(), m.getLatenciaMitjanaMs(), m.getLatenciaP50Ms(),
+                m.getLatenciaP90Ms(), m.getLatenciaP99Ms(), m.getLatenciaP999Ms(), m.getLatenciaMaximaMs(),
+                m.getNodes(), m.getNodesPerSegon(), m.getFactorRamificacio(), m.getRatiTalls(),
+                m.getRatiTallsPrimerMoviment(), m.getProfunditatMitjana(), m.getProfunditatMaxima()
+            };
+            sortida.println(format == Format.CSV ? csv(valors) : json(valors));
+        }
+        sortida.flush();
+    }
+
+    /**
+     * Atura els bolcats periòdics, en fa un d'últim i tanca el fitxer.
+     */
+    @Override
+    public void close() {
+        fil.shutdownNow();
+        bolca();
+        sortida.close();
+    }
+
+    private static String csv(Object[] valors) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < valors.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(valors[i] instanceof String ? '"' + ((String) valors[i]).replace("\"", "\"\"") + '"' : text(valors[i]));
+        }
+        return sb.toString();
+    }
+
+    private static String json(Object[] valors) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < valors.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append('"').append(CAMPS[i]).append("\": ");
+            if (valors[i] instanceof String) {
+                sb.append('"').append(((String) valors[i]).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            } else {
+                sb.append(text(valors[i]));
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String text(Object valor) {
+        return (valor instanceof Double) ? String.format(Locale.ROOT, "%.4f", (Double) valor) : String.valueOf(valor);
+    }
+}
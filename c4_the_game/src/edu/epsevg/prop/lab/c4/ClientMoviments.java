@@ -0,0 +1,135 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Client del protocol de ServidorMoviments. Manté oberta una connexió (una
+ * sessió del servidor) i fa les peticions d'una en una.
+ */
+public class ClientMoviments implements Closeable {
+    private final Socket socol;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * Resposta del servidor a una petició de moviment.
+     */
+    public static class Resposta {
+        private final byte estat;
+        private final int columna;
+        private final int profunditat;
+        private final int valor;
+        private final long nodes;
+        private final long nanosegons;
+
+        Resposta(byte estat, int columna, int profunditat, int valor, long nodes, long nanosegons) {
+            this.estat = estat;
+            this.columna = columna;
+            this.profunditat = profunditat;
+            this.valor = valor;
+            this.nodes = nodes;
+            this.nanosegons = nanosegons;
+        }
+
+        /**
+         * @return ServidorMoviments.OK o el codi d'error.
+         */
+        public byte getEstat() {
+            return estat;
+        }
+
+        /**
+         * @return La columna escollida, o -1 si hi ha hagut error.
+         */
+        public int getColumna() {
+            return columna;
+        }
+
+        /**
+         * @return Profunditat assolida per la cerca.
+         */
+        public int getProfunditat() {
+            return profunditat;
+        }
+
+        /**
+         * @return Valor de la columna per al color que mou.
+         */
+        public int getValor() {
+            return valor;
+        }
+
+        /**
+         * @return Nodes visitats per la cerca.
+         */
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * @return Temps de cerca al servidor, en ns.
+         */
+        public long getNanosegons() {
+            return nanosegons;
+        }
+    }
+
+    /**
+     * Es connecta al servidor.
+     * @param host Adreça del servidor.
+     * @param port Port del servidor.
+     * @throws IOException Si no es pot connectar.
+     */
+    public ClientMoviments(String host, int port) throws IOException {
+        socol = new Socket(host, port);
+        socol.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socol.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socol.getOutputStream()));
+    }
+
+    /**
+     * Demana la millor columna d'una posició.
+     * @param p La posició.
+     * @param color El color que mou.
+     * @param perTemps Cert si el pressupost són ms per moviment, fals si és la profunditat.
+     * @param pressupost Profunditat o ms.
+     * @return La resposta del servidor.
+     * @throws IOException Si es talla la connexió.
+     */
+    public Resposta demana(Posicio p, int color, boolean perTemps, int pressupost) throws IOException {
+        out.writeByte(ServidorMoviments.MOVIMENT);
+        out.writeByte(color);
+        out.writeByte(perTemps ? ServidorMoviments.PER_TEMPS : ServidorMoviments.PER_PROFUNDITAT);
+        out.writeInt(pressupost);
+        out.writeLong(p.getFitxes(1));
+        out.writeLong(p.getFitxes(-1));
+        out.flush();
+
+        byte estat = in.readByte();
+        int columna = in.readByte();
+        int profunditat = in.readByte();
+        int valor = in.readInt();
+        long nodes = in.readLong();
+        long nanos = in.readLong();
+        return new Resposta(estat, columna, profunditat, valor, nodes, nanos);
+    }
+
+    /**
+     * Acaba la sessió i tanca la connexió.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.writeByte(ServidorMoviments.ADEU);
+            out.flush();
+        } finally {
+            socol.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package edu.epsevg.prop.lab.c4;
+
+/**
+ * Estratègies de cerca de MinimaxPlayer, per triar-les en temps d'execució.
+ * Totes tres donen el mateix valor a l'arrel; només canvia quants nodes
+ * visiten. Les podes reprodueixen les de l'antiga parella valorMaxim/valorMinim:
+ * quan mou el jugador es poda amb valor igual a beta i quan mou el rival només
+ * si el valor el supera.
+ */
+public enum EstrategiaCerca implements SearchStrategy {
+    /** Minimax sense poda: tots els fills es cerquen amb la finestra sencera. */
+    MINIMAX {
+        @Override
+        public long cercaFill(MinimaxPlayer c, Posicio t, int col, long alfa, long beta,
+                              int profunditat, int color, int j) {
+            return c.valorFill(t, col, -SENSE_LIMIT, SENSE_LIMIT, profunditat, color);
+        }
+
+        @Override
+        public boolean talla(long valor, long beta, boolean jugador) {
+            return false;
+        }
+    },
+
+    /** Poda alfa-beta, l'estratègia per defecte. */
+    ALFA_BETA {
+        @Override
+        public long cercaFill(MinimaxPlayer c, Posicio t, int col, long alfa, long beta,
+                              int profunditat, int color, int j) {
+            return c.valorFill(t, col, alfa, beta, profunditat, color);
+        }
+    },
+
+    /**
+     * Cerca de variació principal (PVS o NegaScout): el primer fill es cerca
+     * amb la finestra sencera i la resta amb la finestra nul·la (alfa, alfa + 1),
+     * que només diu si el fill millora alfa; si el millora, es torna a cercar.
+     * Quan mou el rival un valor igual a beta no poda, així que també es torna
+     * a cercar perquè sigui exacte.
+     */
+    PVS {
+        @Override
+        public long cercaFill(MinimaxPlayer c, Posicio t, int col, long alfa, long beta,
+                              int profunditat, int color, int j) {
+            if (j == 0 || alfa >= beta - 1) {
+                return c.valorFill(t, col, alfa, beta, profunditat, color);
+            }
+            long v = c.valorFill(t, col, alfa, alfa + 1, profunditat, color);
+            boolean dinsFinestra = c.mouJugador(color) ? v < beta : v <= beta;
+            if (v > alfa && dinsFinestra && !c.estaAturada()) {
+                c.comptaRecerca();
+                v = c.valorFill(t, col, alfa, beta, profunditat, color);
+            }
+            return v;
+        }
+    };
+
+    /** Cota de les finestres sense límit, lluny de qualsevol valor de l'heurística. */
+    private static final long SENSE_LIMIT = 1L << 40;
+
+    @Override
+    public boolean talla(long valor, long beta, boolean jugador) {
+        return jugador ? valor >= beta : valor > beta;
+    }
+}
@@ -0,0 +1,44 @@
+package edu.epsevg.prop.lab.c4;
+
+/**
+ * Heurística que MinimaxPlayer fa servir per puntuar les fulles de la cerca.
+ *
+ * La cerca avisa l'avaluador de cada moviment que fa i desfà, de manera que
+ * les implementacions poden mantenir l'avaluació de manera incremental; les
+ * que no ho necessitin poden ignorar aquests avisos.
+ */
+public interface Evaluator {
+
+    /**
+     * Prepara l'avaluador per a una cerca nova.
+     * @param t La posició de l'arrel.
+     * @param colorJugador Color del jugador des del qual s'avalua.
+     */
+    void inicia(Posicio t, int colorJugador);
+
+    /**
+     * Avisa que s'acaba de posar una fitxa.
+     * @param t La posició, amb la fitxa ja posada.
+     * @param col La columna on s'ha posat.
+     */
+    void afegeix(Posicio t, int col);
+
+    /**
+     * Avisa que s'ha desfet l'últim moviment avisat amb afegeix.
+     */
+    void treu();
+
+    /**
+     * Puntua una posició des del punt de vista del color donat a inicia.
+     * @param t La posició actual.
+     * @return Puntuació heurística; Integer.MAX_VALUE o -Integer.MAX_VALUE si la partida està guanyada o perduda.
+     */
+    int avalua(Posicio t);
+
+    /**
+     * Crea un avaluador independent amb la mateixa configuració, per fer-lo
+     * servir en un altre fil.
+     * @return Un avaluador nou.
+     */
+    Evaluator copia();
+}
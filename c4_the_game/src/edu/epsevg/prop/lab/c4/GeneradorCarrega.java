@@ -0,0 +1,151 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de càrrega per a ServidorMoviments. Obre diverses connexions
+ * alhora i cadascuna demana moviments per a posicions aleatòries, una
+ * darrere l'altra; al final mostra el rendiment i la latència vista pel client.
+ *
+ * Amb port 0 engega un servidor dins del mateix procés, de manera que es pot
+ * provar tot a la màquina local sense res més.
+ */
+public class GeneradorCarrega {
+    private static final int MIDA = Posicio.MIDA;
+    private static final int JUGADES_MAXIMES = 24; // Fitxes màximes de les posicions generades
+
+    private final String host;
+    private final int port;
+    private final boolean perTemps;
+    private final int pressupost;
+    private final HistogramaLatencia latencies = new HistogramaLatencia();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong nodes = new AtomicLong();
+
+    /**
+     * @param host Adreça del servidor.
+     * @param port Port del servidor.
+     * @param perTemps Cert si el pressupost són ms per moviment, fals si és la profunditat.
+     * @param pressupost Profunditat o ms de cada petició.
+     */
+    public GeneradorCarrega(String host, int port, boolean perTemps, int pressupost) {
+        this.host = host;
+        this.port = port;
+        this.perTemps = perTemps;
+        this.pressupost = pressupost;
+    }
+
+    /**
+     * Llança la càrrega i espera que acabi.
+     * @param connexions Connexions obertes alhora.
+     * @param peticions Peticions per connexió.
+     * @param llavor Llavor de les posicions aleatòries.
+     * @return Temps total en ns.
+     * @throws InterruptedException Si s'interromp l'espera.
+     */
+    public long executa(int connexions, int peticions, long llavor) throws InterruptedException {
+        List<Thread> fils = new ArrayList<>();
+        long inici = System.nanoTime();
+        for (int i = 0; i < connexions; i++) {
+            final Random r = new Random(llavor + i);
+            Thread fil = new Thread(() -> sessio(r, peticions), "carrega-" + i);
+            fils.add(fil);
+            fil.start();
+        }
+        for (Thread fil : fils) {
+            fil.join();
+        }
+        return System.nanoTime() - inici;
+    }
+
+    private void sessio(Random r, int peticions) {
+        try (ClientMoviments client = new ClientMoviments(host, port)) {
+            for (int i = 0; i < peticions; i++) {
+                Posicio p = posicioAleatoria(r);
+                int color = (p.casellesBuides() % 2 == 0) ? 1 : -1; // Les vermelles comencen
+                long t0 = System.nanoTime();
+                ClientMoviments.Resposta resposta = client.demana(p, color, perTemps, pressupost);
+                long t = System.nanoTime() - t0;
+                if (resposta.getEstat() != ServidorMoviments.OK || resposta.getColumna() < 0
+                        || resposta.getColumna() >= MIDA || !p.movpossible(resposta.getColumna())) {
+                    errors.incrementAndGet();
+                    continue;
+                }
+                nodes.addAndGet(resposta.getNodes());
+                synchronized (latencies) {
+                    latencies.registra(t);
+                }
+            }
+        } catch (IOException ex) {
+            System.err.println("Error a la connexió: " + ex.getMessage());
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Juga un nombre aleatori de jugades a l'atzar sense acabar la partida.
+     */
+    private static Posicio posicioAleatoria(Random r) {
+        Posicio p = new Posicio(new Tauler(MIDA));
+        int jugades = r.nextInt(JUGADES_MAXIMES + 1);
+        int color = 1;
+        for (int k = 0; k < jugades; k++) {
+            int col = r.nextInt(MIDA);
+            if (!p.movpossible(col)) continue;
+            p.afegeix(col, color);
+            if (p.solucio(col, color)) {
+                p.treu(col);
+                break;
+            }
+            color = -color;
+        }
+        return p;
+    }
+
+    /**
+     * Fa una prova de càrrega:
+     * GeneradorCarrega [host] [port] [connexions] [peticions] [profunditat | Nms] [llavor]
+     * Amb port 0 s'engega un servidor local al mateix procés.
+     * @param args Els arguments.
+     * @throws IOException Si no es pot engegar el servidor local.
+     * @throws InterruptedException Si s'interromp la prova.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = (args.length > 0) ? args[0] : "127.0.0.1";
+        int port = (args.length > 1) ? Integer.parseInt(args[1]) : 0;
+        int connexions = (args.length > 2) ? Integer.parseInt(args[2]) : 16;
+        int peticions = (args.length > 3) ? Integer.parseInt(args[3]) : 50;
+        String pressupost = (args.length > 4) ? args[4] : "6";
+        long llavor = (args.length > 5) ? Long.parseLong(args[5]) : 1;
+        boolean perTemps = pressupost.endsWith("ms");
+        int valor = Integer.parseInt(perTemps ? pressupost.substring(0, pressupost.length() - 2) : pressupost);
+
+        ServidorMoviments local = null;
+        if (port == 0) {
+            local = new ServidorMoviments(0, connexions, 64);
+            port = local.getPort();
+            System.out.println("Servidor local al port " + port);
+        }
+        try {
+            GeneradorCarrega carrega = new GeneradorCarrega(host, port, perTemps, valor);
+            long nanos = carrega.executa(connexions, peticions, llavor);
+            HistogramaLatencia h = carrega.latencies;
+            System.out.printf("%d connexions x %d peticions (%s): %d respostes, %d errors, %.1f s%n",
+                    connexions, peticions, perTemps ? valor + " ms" : "profunditat " + valor,
+                    h.getTotal(), carrega.errors.get(), nanos / 1e9);
+            System.out.printf("%.1f peticions/s, %.0f nodes/s%n",
+                    h.getTotal() * 1e9 / nanos, carrega.nodes.get() * 1e9 / nanos);
+            System.out.printf("latència ms: mitjana %.2f, p50 %.2f, p90 %.2f, p99 %.2f, màxim %.2f%n",
+                    h.getMitjana() / 1e6, h.getPercentil(50) / 1e6, h.getPercentil(90) / 1e6,
+                    h.getPercentil(99) / 1e6, h.getMaxim() / 1e6);
+        } finally {
+            if (local != null) {
+                local.close();
+            }
+        }
+    }
+}
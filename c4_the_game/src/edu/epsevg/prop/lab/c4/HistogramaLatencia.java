@@ -0,0 +1,103 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.util.Arrays;
+
+/**
+ * Histograma log-lineal de latències, a l'estil d'HdrHistogram.
+ *
+ * Els valors fins a 63 es guarden exactes; a partir d'aquí cada potència de
+ * dos es divideix en 32 intervals iguals, de manera que l'error relatiu és
+ * com a molt d'un 3%. Tots els comptadors es reserven en crear-lo i registrar
+ * un valor no reserva memòria.
+ *
+ * No és segur entre fils; MetriquesJugador el protegeix.
+ */
+public class HistogramaLatencia {
+    private static final int BITS_SUBINTERVAL = 5;
+    private static final int SUBINTERVALS = 1 << BITS_SUBINTERVAL; // Intervals per potència de dos
+    private static final int EXPONENT_MAXIM = 63 - BITS_SUBINTERVAL;
+
+    private final long[] comptadors = new long[(EXPONENT_MAXIM + 1) * SUBINTERVALS + SUBINTERVALS];
+    private long total;
+    private long suma;
+    private long maxim;
+
+    /**
+     * Afegeix un valor.
+     * @param valor El valor, normalment en nanosegons; els negatius compten com a 0.
+     */
+    public void registra(long valor) {
+        long v = Math.max(valor, 0);
+        comptadors[index(v)]++;
+        total++;
+        suma += v;
+        maxim = Math.max(maxim, v);
+    }
+
+    /**
+     * @return Nombre de valors registrats.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return Valor més gran registrat.
+     */
+    public long getMaxim() {
+        return maxim;
+    }
+
+    /**
+     * @return Mitjana exacta dels valors registrats, o 0 si no n'hi ha cap.
+     */
+    public double getMitjana() {
+        return (total == 0) ? 0 : (double) suma / total;
+    }
+
+    /**
+     * Retorna el valor per sota del qual queda el percentatge indicat de
+     * valors, amb la precisió de l'interval on cau.
+     * @param percentil Entre 0 i 100.
+     * @return El límit superior de l'interval del percentil, o 0 si no hi ha valors.
+     */
+    public long getPercentil(double percentil) {
+        if (total == 0) return 0;
+        long objectiu = Math.max(1, (long) Math.ceil(percentil / 100 * total));
+        long acumulat = 0;
+        for (int i = 0; i < comptadors.length; i++) {
+            acumulat += comptadors[i];
+            if (acumulat >= objectiu) {
+                return Math.min(limitSuperior(i), maxim);
+            }
+        }
+        return maxim;
+    }
+
+    /**
+     * Esborra tots els valors.
+     */
+    public void reinicia() {
+        Arrays.fill(comptadors, 0);
+        total = 0;
+        suma = 0;
+        maxim = 0;
+    }
+
+    private static int index(long v) {
+        if (v < 2 * SUBINTERVALS) {
+            return (int) v;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(v) - BITS_SUBINTERVAL;
+        return exponent * SUBINTERVALS + (int) (v >>> exponent);
+    }
+
+    private static long limitSuperior(int i) {
+        if (i < 2 * SUBINTERVALS) {
+            return i;
+        }
+        int exponent = i / SUBINTERVALS - 1;
+        long mantissa = i - exponent * SUBINTERVALS;
+        return ((mantissa + 1) << exponent) - 1;
+    }
+}
@@ -32,6 +32,7 @@ public class Juga2 extends javax.swing.JFrame {
     int otherColor;
     boolean autoMode = true;
     boolean estaPensant = false;
+    Mover moverActual; // Moviment automàtic en curs o l'últim fet, null si encara no n'hi ha hagut cap
 
     /**
      * Creates new form NewJFrame
@@ -148,12 +149,21 @@ public class Juga2 extends javax.swing.JFrame {
         filler9 = new javax.swing.Box.Filler(new java.awt.Dimension(0, 400), new java.awt.Dimension(0, 400), new java.awt.Dimension(32767, 400));
         filler10 = new javax.swing.Box.Filler(new java.awt.Dimension(0, 400), new java.awt.Dimension(0, 400), new java.awt.Dimension(32767, 400));
         jTextField3 = new javax.swing.JTextField();
+        jButton1 = new javax.swing.JButton();
 
         setDefaultCloseOperation(javax.swing.WindowConstants.EXIT_ON_CLOSE);
 
         jLabel1.setHorizontalAlignment(javax.swing.SwingConstants.CENTER);
         jLabel1.setText("Versus");
 
+        jButton1.setText("Mou ara");
+        jButton1.setEnabled(false);
+        jButton1.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jButton1ActionPerformed(evt);
+            }
+        });
+
         jLayeredPane1.setBackground(new java.awt.Color(255, 255, 255));
         jLayeredPane1.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
         jLayeredPane1.addMouseListener(new java.awt.event.MouseAdapter() {
@@ -219,6 +229,8 @@ public class Juga2 extends javax.swing.JFrame {
                                 .addComponent(jTextField3, javax.swing.GroupLayout.PREFERRED_SIZE, 91, javax.swing.GroupLayout.PREFERRED_SIZE)
                                 .addGap(19, 19, 19)
                                 .addComponent(jTextField2)
+                                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                .addComponent(jButton1)
                                 .addContainerGap())
                         .addGroup(layout.createSequentialGroup()
                                 .addGap(57, 57, 57)
@@ -234,6 +246,7 @@ public class Juga2 extends javax.swing.JFrame {
                                         .addComponent(jTextField1, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                                         .addComponent(jLabel1)
                                         .addComponent(jTextField2, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                        .addComponent(jButton1)
                                         .addComponent(jTextField3, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                                 .addGap(18, 18, 18)
                                 //.addComponent(jLayeredPane1, javax.swing.GroupLayout.PREFERRED_SIZE, 400, Short.MAX_VALUE)
@@ -279,6 +292,15 @@ public class Juga2 extends javax.swing.JFrame {
 
     } //GEN-LAST:event_jLayeredPane1MouseClicked
 
+    private void jButton1ActionPerformed(java.awt.event.ActionEvent evt) {
+        // El jugador torna la millor columna que ha trobat fins ara, si encara
+        // no ha tornat: si no, la petició serviria per al moviment següent
+        Mover m = moverActual;
+        if (m != null && !m.isDone() && m.jugador instanceof JugadorAturable) {
+            ((JugadorAturable) m.jugador).aturaCerca();
+        }
+    }
+
     private void mouCurrentPlayer(int colu) {
 
         try {
@@ -300,7 +322,9 @@ public class Juga2 extends javax.swing.JFrame {
         jTextField2.setText(t);
         jLayeredPane1.setBackground(new java.awt.Color(255, 255, 0));
         jLayeredPane1.setEnabled(false);
-        (new Mover(currentColor, currentPlayer)).execute();
+        jButton1.setEnabled(currentPlayer instanceof JugadorAturable);
+        moverActual = new Mover(currentColor, currentPlayer);
+        moverActual.execute();
     }
 
     private void verificaSiHaAcabat(int colu, int color) {
@@ -348,7 +372,12 @@ public class Juga2 extends javax.swing.JFrame {
         mostraTornActual();
     }
 
-    class Mover extends SwingWorker<Integer, Object> {
+    /**
+     * Fa el moviment d'un jugador automàtic en segon pla. Si és un
+     * JugadorAturable, mentre pensa publica la millor columna trobada fins ara,
+     * la profunditat i els nodes per segon, i es pot aturar amb "Mou ara".
+     */
+    class Mover extends SwingWorker<Integer, String> {
 
         int color;
         Jugador jugador;
@@ -360,7 +389,30 @@ public class Juga2 extends javax.swing.JFrame {
 
         @Override
         public Integer doInBackground() {
-            return jugador.moviment(t, color);
+            if (!(jugador instanceof JugadorAturable)) {
+                return jugador.moviment(t, color);
+            }
+            JugadorAturable aturable = (JugadorAturable) jugador;
+            String qui = (jugador == player1 ? "P1" : "P2");
+            aturable.setReceptorProgres((columna, profunditat, nodes, nodesPerSegon) -> {
+                if (columna >= 0) {
+                    publish(String.format("%s PENSANT: COLUMNA %d, PROFUNDITAT %d, %.0f knodes/s",
+                            qui, columna + 1, profunditat, nodesPerSegon / 1000));
+                }
+            });
+            try {
+                return aturable.moviment(t, color);
+            } finally {
+                aturable.setReceptorProgres(null);
+            }
+        }
+
+        @Override
+        protected void process(java.util.List<String> progres) {
+            // Només cal mostrar el més recent, i no si el moviment ja s'ha fet
+            if (!isDone()) {
+                jTextField2.setText(progres.get(progres.size() - 1));
+            }
         }
 
         @Override
@@ -369,6 +421,7 @@ public class Juga2 extends javax.swing.JFrame {
 
                 jLayeredPane1.setBackground(new java.awt.Color(255, 255, 255));
                 jLayeredPane1.setEnabled(true);
+                jButton1.setEnabled(false);
 
                 mouCurrentPlayer(get());
                 repaint();
@@ -403,6 +456,7 @@ public class Juga2 extends javax.swing.JFrame {
     }
 
     // Variables declaration - do not modify
+    private javax.swing.JButton jButton1;
     private javax.swing.Box.Filler filler10;
     private javax.swing.Box.Filler filler2;
     private javax.swing.Box.Filler filler4;
@@ -0,0 +1,23 @@
+package edu.epsevg.prop.lab.c4;
+
+/**
+ * Jugador automàtic que informa del progrés mentre pensa i a qui es pot
+ * demanar que jugui ja la millor columna que ha trobat, com fa Juga2 amb
+ * el botó "Mou ara".
+ */
+public interface JugadorAturable extends Jugador {
+
+    /**
+     * Demana que la cerca en curs acabi com més aviat millor i que moviment
+     * torni la millor columna trobada fins ara. Es pot cridar des de
+     * qualsevol fil, també just abans que comenci la cerca; la petició
+     * s'oblida quan moviment torna.
+     */
+    void aturaCerca();
+
+    /**
+     * Canvia on s'informa del progrés de cada cerca.
+     * @param receptor El receptor, o null per no informar del progrés.
+     */
+    void setReceptorProgres(ReceptorProgres receptor);
+}
@@ -0,0 +1,108 @@
+package edu.epsevg.prop.lab.c4;
+
+/**
+ * Embolcall que mesura qualsevol Jugador sense canviar-ne el comportament.
+ *
+ * Cada moviment en registra la latència a unes MetriquesJugador i, si el
+ * jugador és un MinimaxPlayer o un MctsPlayer, també les estadístiques de la cerca. Unes
+ * mateixes mètriques es poden compartir entre diversos embolcalls, per
+ * exemple un per fil d'un Torneig.
+ */
+public class JugadorInstrumentat implements Jugador {
+    private final Jugador jugador;
+    private final MetriquesJugador metriques;
+
+    /**
+     * Embolcalla un jugador. Feu servir embolcalla perquè els jugadors
+     * automàtics continuïn sent IAuto.
+     * @param jugador El jugador a mesurar.
+     * @param metriques On es registren les mesures.
+     */
+    protected JugadorInstrumentat(Jugador jugador, MetriquesJugador metriques) {
+        this.jugador = jugador;
+        this.metriques = metriques;
+    }
+
+    /**
+     * Embolcalla un jugador conservant si és automàtic o no, perquè Juga2
+     * el continuï movent sol, i si és un JugadorAturable, perquè Juga2 en
+     * continuï mostrant el progrés i el pugui aturar.
+     * @param jugador El jugador a mesurar.
+     * @param metriques On es registren les mesures.
+     * @return El jugador embolcallat.
+     */
+    public static JugadorInstrumentat embolcalla(Jugador jugador, MetriquesJugador metriques) {
+        if (jugador instanceof IAuto && jugador instanceof JugadorAturable) {
+            return new AutoAturable((JugadorAturable) jugador, metriques);
+        }
+        if (jugador instanceof IAuto) {
+            return new Auto(jugador, metriques);
+        }
+        return new JugadorInstrumentat(jugador, metriques);
+    }
+
+    @Override
+    public int moviment(Tauler t, int color) {
+        long inici = System.nanoTime();
+        int col = jugador.moviment(t, color);
+        long nanos = System.nanoTime() - inici;
+        SearchStats estadistiques = null;
+        if (jugador instanceof MinimaxPlayer) {
+            estadistiques = ((MinimaxPlayer) jugador).getEstadistiques();
+        } else if (jugador instanceof MctsPlayer) {
+            estadistiques = ((MctsPlayer) jugador).getEstadistiques();
+        }
+        metriques.registra(nanos, estadistiques);
+        return col;
+    }
+
+    @Override
+    public String nom() {
+        return jugador.nom();
+    }
+
+    /**
+     * @return El jugador embolcallat.
+     */
+    public Jugador getJugador() {
+        return jugador;
+    }
+
+    /**
+     * @return Les mètriques on es registren les mesures.
+     */
+    public MetriquesJugador getMetriques() {
+        return metriques;
+    }
+
+    /**
+     * Embolcall dels jugadors automàtics.
+     */
+    private static class Auto extends JugadorInstrumentat implements IAuto {
+        Auto(Jugador jugador, MetriquesJugador metriques) {
+            super(jugador, metriques);
+        }
+    }
+
+    /**
+     * Embolcall dels jugadors automàtics que es poden aturar.
+     */
+    private static class AutoAturable extends Auto implements JugadorAturable {
+        private final JugadorAturable aturable;
+
+        AutoAturable(JugadorAturable jugador, MetriquesJugador metriques) {
+            super(jugador, metriques);
+            this.aturable = jugador;
+        }
+
+        @Override
+        public void aturaCerca() {
+            aturable.aturaCerca();
+        }
+
+        @Override
+        public void setReceptorProgres(ReceptorProgres receptor) {
+            aturable.setReceptorProgres(receptor);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Llibre d'obertures precalculat.
+ *
+ * El fitxer es genera fora de línia amb el main d'aquesta classe, que cerca
+ * amb MinimaxPlayer totes les posicions fins a un nombre de jugades donat.
+ * En temps de joc el fitxer es projecta a memòria amb FileChannel.map i cada
+ * consulta és una cerca binària sobre el fitxer, sense reservar memòria.
+ * Una posició i la seva reflectida són una sola entrada, amb la clau canònica
+ * de Posicio i la columna orientada com la posició canònica.
+ *
+ * Format (big-endian):
+ * <pre>
+ *   int   MAGIC
+ *   int   VERSIO
+ *   int   n             nombre d'entrades
+ *   int   jugades       jugades màximes de les posicions del llibre
+ *   int   profunditat   profunditat de cerca amb què s'ha generat
+ *   long  claus[n]      claus canòniques de les posicions, en ordre creixent
+ *   byte  columnes[n]   millor columna de cada posició canònica
+ * </pre>
+ */
+public class LlibreObertures {
+    private static final int MAGIC = 0x43344C42; // "C4LB"
+    private static final int VERSIO = 2; // La 2 guarda les posicions canòniques
+    private static final int CAPCALERA = 5 * Integer.BYTES;
+    private static final long CLAU_BLAVES = 0x9E3779B97F4A7C15L; // Distingeix les posicions on mou el color -1
+    private static final int MIDA = Posicio.MIDA;
+
+    private final ByteBuffer dades;
+    private final int entrades;
+    private final int jugades;
+    private final int profunditat;
+
+    private LlibreObertures(ByteBuffer dades) {
+        this.dades = dades;
+        if (dades.capacity() < CAPCALERA || dades.getInt(0) != MAGIC || dades.getInt(4) != VERSIO) {
+            throw new IllegalArgumentException("No és un llibre d'obertures vàlid");
+        }
+        entrades = dades.getInt(8);
+        jugades = dades.getInt(12);
+        profunditat = dades.getInt(16);
+        if (dades.capacity() != CAPCALERA + (long) entrades * (Long.BYTES + 1)) {
+            throw new IllegalArgumentException("El llibre d'obertures està truncat");
+        }
+    }
+
+    /**
+     * Obre un llibre projectant el fitxer a memòria.
+     * @param fitxer El fitxer generat amb genera.
+     * @return El llibre.
+     * @throws IOException Si no es pot llegir el fitxer.
+     */
+    public static LlibreObertures obre(File fitxer) throws IOException {
+        try (FileChannel canal = FileChannel.open(fitxer.toPath(), StandardOpenOption.READ)) {
+            // La projecció continua vàlida després de tancar el canal
+            return new LlibreObertures(canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size()));
+        }
+    }
+
+    /**
+     * Busca la millor columna d'una posició.
+     * @param p La posició.
+     * @param color El color que mou.
+     * @return La columna, o -1 si la posició no és al llibre.
+     */
+    public int consulta(Posicio p, int color) {
+        long clau = clau(p, color);
+        int baix = 0, alt = entrades - 1;
+        while (baix <= alt) {
+            int mig = (baix + alt) >>> 1;
+            long k = dades.getLong(CAPCALERA + mig * Long.BYTES);
+            if (k < clau) {
+                baix = mig + 1;
+            } else if (k > clau) {
+                alt = mig - 1;
+            } else {
+                return p.orientaColumna(dades.get(CAPCALERA + entrades * Long.BYTES + mig));
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Nombre de posicions del llibre.
+     */
+    public int getEntrades() {
+        return entrades;
+    }
+
+    /**
+     * @return Jugades màximes de les posicions del llibre.
+     */
+    public int getJugades() {
+        return jugades;
+    }
+
+    /**
+     * @return Profunditat de cerca amb què s'ha generat el llibre.
+     */
+    public int getProfunditat() {
+        return profunditat;
+    }
+
+    private static long clau(Posicio p, int color) {
+        return (color == 1) ? p.getClauCanonica() : p.getClauCanonica() ^ CLAU_BLAVES;
+    }
+
+    /**
+     * Genera un llibre amb totes les posicions de com a molt jugades fitxes,
+     * començant per les vermelles (color 1) com a Juga2, i el desa a disc.
+     * @param jugades Jugades màximes de les posicions.
+     * @param profunditat Profunditat de cerca de cada posició.
+     * @param fils Nombre de posicions que es cerquen alhora.
+     * @param sortida Fitxer on desar el llibre.
+     * @throws IOException Si no es pot escriure el fitxer.
+     * @throws InterruptedException Si s'interromp la generació.
+     */
+    public static void genera(int jugades, int profunditat, int fils, File sortida) throws IOException, InterruptedException {
+        Map<Long, byte[]> posicions = new LinkedHashMap<>();
+        enumera(new Posicio(new Tauler(MIDA)), new byte[0], 1, jugades, posicions);
+
+        long[] claus = new long[posicions.size()];
+        List<Future<Integer>> columnes = new ArrayList<>(claus.length);
+        ExecutorService pool = Executors.newFixedThreadPool(fils);
+        try {
+            int i = 0;
+            for (Map.Entry<Long, byte[]> e : posicions.entrySet()) {
+                claus[i++] = e.getKey();
+                final byte[] seq = e.getValue();
+                columnes.add(pool.submit(() -> {
+                    Tauler t = new Tauler(MIDA);
+                    int color = 1;
+                    for (byte c : seq) {
+                        t.afegeix(c, color);
+                        color = -color;
+                    }
+                    // Un jugador nou per posició: la taula de transposicions
+                    // d'una cerca anterior podria canviar la columna escollida
+                    int col = new MinimaxPlayer(profunditat, false).moviment(t, color);
+                    return new Posicio(t).orientaColumna(col);
+                }));
+            }
+
+            byte[] millors = new byte[claus.length];
+            for (i = 0; i < claus.length; i++) {
+                millors[i] = columnes.get(i).get().byteValue();
+            }
+            desa(claus, millors, jugades, profunditat, sortida);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error cercant una posició del llibre", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Recorre totes les partides fins a jugades fitxes i guarda, per a cada
+     * posició diferent, comptant una posició i la seva reflectida com una de
+     * sola, una seqüència de columnes que hi arriba.
+     */
+    private static void enumera(Posicio p, byte[] seq, int color, int jugades, Map<Long, byte[]> posicions) {
+        if (posicions.putIfAbsent(clau(p, color), seq) != null || seq.length == jugades) {
+            return; // Transposició ja visitada, o prou fondo
+        }
+        for (int col = 0; col < MIDA; col++) {
+            if (!p.movpossible(col)) continue;
+            p.afegeix(col, color);
+            if (!p.solucio(col, color) && p.espotmoure()) {
+                byte[] fill = Arrays.copyOf(seq, seq.length + 1);
+                fill[seq.length] = (byte) col;
+                enumera(p, fill, -color, jugades, posicions);
+            }
+            p.treu(col);
+        }
+    }
+
+    private static void desa(long[] claus, byte[] columnes, int jugades, int profunditat, File sortida) throws IOException {
+        // Ordena claus i columnes a la vegada
+        Integer[] ordre = new Integer[claus.length];
+        for (int i = 0; i < ordre.length; i++) ordre[i] = i;
+        Arrays.sort(ordre, (a, b) -> Long.compare(claus[a], claus[b]));
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sortida)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSIO);
+            out.writeInt(claus.length);
+            out.writeInt(jugades);
+            out.writeInt(profunditat);
+            for (Integer i : ordre) out.writeLong(claus[i]);
+            for (Integer i : ordre) out.writeByte(columnes[i]);
+        }
+    }
+
+    /**
+     * Genera un llibre d'obertures:
+     * LlibreObertures sortida [jugades] [profunditat] [fils]
+     * @param args Els arguments.
+     * @throws Exception Si la generació falla.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Ús: LlibreObertures sortida [jugades] [profunditat] [fils]");
+            return;
+        }
+        int jugades = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+        int profunditat = (args.length > 2) ? Integer.parseInt(args[2]) : 12;
+        int fils = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        long inici = System.nanoTime();
+        File sortida = new File(args[0]);
+        genera(jugades, profunditat, fils, sortida);
+        LlibreObertures llibre = obre(sortida);
+        System.out.printf("%d posicions fins a %d jugades, profunditat %d, %.1f s%n",
+                llibre.getEntrades(), jugades, profunditat, (System.nanoTime() - inici) / 1e9);
+    }
+}
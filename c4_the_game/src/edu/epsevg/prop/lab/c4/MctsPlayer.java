@@ -0,0 +1,518 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Jugador de cerca d'arbre de Montecarlo (MCTS) amb UCT, l'alternativa a la
+ * cerca alfa-beta de MinimaxPlayer.
+ *
+ * Cada iteració baixa per l'arbre triant a cada node el fill amb més UCB1,
+ * expandeix la primera fulla a què arriba, simula la partida fins al final i
+ * apuja el resultat pel camí. Les simulacions juguen sobre Posicio: si el
+ * color que mou pot fer 4 en ratlla ho fa, i si no tira a una columna a l'atzar.
+ *
+ * Els nodes viuen en arrays preparats al constructor, un per camp, i la cerca
+ * no reserva memòria. Amb més d'un fil tots cerquen sobre el mateix arbre:
+ * cada fill triat suma una pèrdua virtual mentre dura la iteració perquè els
+ * altres fils tendeixin a provar-ne d'altres. Quan s'acaben els nodes les
+ * fulles ja no s'expandeixen, però s'hi continua simulant, i les
+ * estadístiques de la cerca ho indiquen (SearchStats.isArbrePle).
+ *
+ * L'arbre creix uns 13000 nodes per ms i fil a l'obertura. Per defecte es
+ * dimensiona a partir del pressupost de cada moviment; el constructor
+ * complet permet fixar-ne la memòria, com la de TaulaTransposicio.
+ *
+ * La columna escollida és el fill de l'arrel amb més visites.
+ */
+public class MctsPlayer implements JugadorAturable, IAuto {
+    private static final int MIDA = Posicio.MIDA;
+    private static final int BYTES_PER_NODE = 2 * Byte.BYTES + 3 * Integer.BYTES; // Un element de cada array
+    private static final long NODES_PER_MS = 16000; // Creixement de l'arbre per fil, amb marge, per dimensionar-lo segons el temps
+    private static final int MIDA_ARBRE_MAXIMA_MB = 256; // Màxim que es reserva per defecte, com a molt 1/4 del heap
+    private static final double EXPLORACIO = 1.4; // Constant d'exploració d'UCB1, prop de l'arrel de 2
+    private static final int PERDUA_VIRTUAL = 3; // Visites sense punts mentre un fil passa pel node
+    private static final int ITERACIONS_ENTRE_CONSULTES = 64; // Cada quantes iteracions es mira el rellotge (potència de 2)
+    private static final long NANOS_ENTRE_PROGRESSOS = 100000000L; // Cada quant s'informa del progrés (100 ms)
+    private static final int[] CENTRE = {3, 4, 2, 5, 1, 6, 0, 7}; // Ordre dels fills, de dins cap a fora
+
+    // Valors de fills per als nodes que no tenen l'índex del primer fill
+    private static final int SENSE_FILLS = 0; // Encara no s'ha expandit
+    private static final int EXPANDINT = -1; // Un fil l'està expandint
+    private static final int SENSE_ESPAI = -2; // No hi cabien els fills
+
+    private final int capacitat; // Nodes que hi caben a l'arbre
+    private final AtomicIntegerArray fills; // Índex del primer fill de cada node, o un dels valors de dalt
+    private final byte[] nFills; // Fills de cada node expandit
+    private final byte[] columna; // Columna de la jugada que porta a cada node
+    private final AtomicIntegerArray visites; // Inclou les pèrdues virtuals en curs
+    private final AtomicIntegerArray punts; // 2 per victòria i 1 per taules, del color que ha jugat per arribar al node
+    private final AtomicInteger nodesUsats = new AtomicInteger();
+    private final AtomicLong comptador = new AtomicLong(); // Iteracions començades, per al límit de playouts
+
+    private final int limitPlayouts; // Iteracions per moviment, 0 sense límit
+    private final long milisegons; // Temps per moviment en ms, 0 sense límit
+    private final Treballador[] treballadors;
+    private final ExecutorService executor; // Fils de més a part del que crida moviment, null si només n'hi ha un
+    private final String nomJugador;
+    private final SearchStats estadistiques = new SearchStats();
+    private ReceptorEstadistiques receptor;
+    private ReceptorProgres receptorProgres; // On s'informa del progrés de la cerca, null si enlloc
+    private volatile boolean aturaAra; // S'ha demanat tornar ja la columna més visitada
+
+    private Posicio arrel;
+    private int colorArrel;
+    private long limitNanos; // Instant (System.nanoTime) en què cal aturar la cerca, 0 si no n'hi ha
+    private long iniciCerca; // Instant (System.nanoTime) en què ha començat la cerca
+
+    /**
+     * Crea un jugador que pensa un temps fix per moviment en un sol fil.
+     * @param milisegons Temps per moviment, en ms.
+     */
+    public MctsPlayer(long milisegons) {
+        this(0, milisegons, 1);
+    }
+
+    /**
+     * Crea un jugador amb l'arbre dimensionat segons el pressupost: hi caben
+     * tots els nodes que poden crear les iteracions, o els que creixen en el
+     * temps per moviment, fins a MIDA_ARBRE_MAXIMA_MB.
+     * @param playouts Iteracions (simulacions) per moviment, o 0 per no limitar-les.
+     * @param milisegons Temps per moviment en ms, o 0 per no limitar-lo.
+     * @param fils Fils que cerquen alhora sobre el mateix arbre.
+     */
+    public MctsPlayer(int playouts, long milisegons, int fils) {
+        this(playouts, milisegons, fils, megabytesPerPressupost(playouts, milisegons, fils));
+    }
+
+    /**
+     * Crea un jugador amb totes les opcions. La cerca s'atura quan s'arriba
+     * al primer dels dos límits.
+     * @param playouts Iteracions (simulacions) per moviment, o 0 per no limitar-les.
+     * @param milisegons Temps per moviment en ms, o 0 per no limitar-lo.
+     * @param fils Fils que cerquen alhora sobre el mateix arbre.
+     * @param megabytes Memòria màxima per a l'arbre, en MB.
+     */
+    public MctsPlayer(int playouts, long milisegons, int fils, int megabytes) {
+        if (playouts <= 0 && milisegons <= 0) {
+            throw new IllegalArgumentException("Cal limitar les iteracions o el temps per moviment");
+        }
+        if (fils < 1) {
+            throw new IllegalArgumentException("Cal com a mínim un fil");
+        }
+        if (megabytes <= 0) {
+            throw new IllegalArgumentException("Cal com a mínim 1 MB per a l'arbre");
+        }
+        this.limitPlayouts = playouts;
+        this.milisegons = milisegons;
+        capacitat = (int) Math.min((long) megabytes * 1024 * 1024 / BYTES_PER_NODE, 1 << 30);
+        fills = new AtomicIntegerArray(capacitat);
+        nFills = new byte[capacitat];
+        columna = new byte[capacitat];
+        visites = new AtomicIntegerArray(capacitat);
+        punts = new AtomicIntegerArray(capacitat);
+        treballadors = new Treballador[fils];
+        for (int i = 0; i < fils; i++) {
+            treballadors[i] = new Treballador(i);
+        }
+        if (fils > 1) {
+            AtomicInteger n = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(fils - 1, r -> {
+                Thread fil = new Thread(r, "mcts-" + n.incrementAndGet());
+                fil.setDaemon(true);
+                return fil;
+            });
+        } else {
+            executor = null;
+        }
+        nomJugador = "MCTS amb " + ((milisegons > 0) ? milisegons + " ms" : playouts + " playouts")
+                + ((fils > 1) ? " i " + fils + " fils" : "");
+    }
+
+    /**
+     * Calcula la memòria de l'arbre per a un pressupost. Cada iteració
+     * expandeix com a molt un node, amb com a molt MIDA fills.
+     */
+    private static int megabytesPerPressupost(int playouts, long milisegons, int fils) {
+        long nodes = Long.MAX_VALUE;
+        if (playouts > 0) {
+            nodes = (long) playouts * MIDA + 1;
+        }
+        if (milisegons > 0) {
+            nodes = Math.min(nodes, milisegons * NODES_PER_MS * Math.max(fils, 1));
+        }
+        long maxim = Math.min(MIDA_ARBRE_MAXIMA_MB, Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024));
+        long megabytes = (nodes / (1024 * 1024 / BYTES_PER_NODE)) + 1;
+        return (int) Math.max(1, Math.min(megabytes, maxim));
+    }
+
+    /**
+     * @return Nodes que hi caben a l'arbre.
+     */
+    public int getCapacitat() {
+        return capacitat;
+    }
+
+    /**
+     * Canvia on s'envien les estadístiques de cada cerca.
+     * @param receptor El receptor, o null per no enviar-les enlloc.
+     */
+    public void setReceptorEstadistiques(ReceptorEstadistiques receptor) {
+        this.receptor = receptor;
+    }
+
+    /**
+     * Fa que el primer fil informi, cada NANOS_ENTRE_PROGRESSOS, de la columna
+     * més visitada fins ara, de la profunditat de l'arbre i de les simulacions.
+     * @param receptor El receptor, o null per no informar del progrés.
+     */
+    @Override
+    public void setReceptorProgres(ReceptorProgres receptor) {
+        this.receptorProgres = receptor;
+    }
+
+    /**
+     * Demana que la cerca en curs acabi com més aviat millor: cada fil se
+     * n'adona en acabar la simulació que fa i moviment torna la columna més
+     * visitada fins ara. La petició s'oblida quan moviment torna.
+     */
+    @Override
+    public void aturaCerca() {
+        aturaAra = true;
+    }
+
+    /**
+     * Retorna les estadístiques de l'última cerca. La instància es reutilitza
+     * a cada moviment; getValor és el tant per mil de punts de la columna
+     * escollida (1000 si guanya sempre, 500 si empata).
+     * @return Les estadístiques.
+     */
+    public SearchStats getEstadistiques() {
+        return estadistiques;
+    }
+
+    @Override
+    public String nom() {
+        return nomJugador;
+    }
+
+    /**
+     * Cerca la millor columna fins a esgotar el pressupost.
+     * @param tauler El tauler actual del joc.
+     * @param color El color que mou.
+     * @return La columna escollida.
+     */
+    @Override
+    public int moviment(Tauler tauler, int color) {
+        long inici = System.nanoTime();
+        iniciCerca = inici;
+        if (arrel == null) {
+            arrel = new Posicio(tauler);
+        } else {
+            arrel.carrega(tauler);
+        }
+        colorArrel = color;
+        limitNanos = (milisegons > 0) ? inici + milisegons * 1000000L : 0;
+        comptador.set(0);
+        nodesUsats.set(1);
+        fills.set(0, SENSE_FILLS);
+        visites.set(0, 0);
+        punts.set(0, 0);
+
+        try {
+            cerca();
+        } finally {
+            aturaAra = false; // La petició d'aturar-se només val per a aquest moviment
+        }
+
+        int col = millorFill(0);
+        estadistiques.reinicia();
+        long playouts = 0;
+        int profunditat = 0;
+        for (Treballador t : treballadors) {
+            playouts += t.playouts;
+            profunditat = Math.max(profunditat, t.profunditat);
+        }
+        estadistiques.playouts = playouts;
+        estadistiques.fullesAvaluades = playouts;
+        estadistiques.nodes = Math.min(nodesUsats.get(), capacitat);
+        estadistiques.arbrePle = nodesUsats.get() > capacitat;
+        estadistiques.profunditatAssolida = profunditat;
+        estadistiques.columna = col;
+        estadistiques.valor = valorPerMil(col);
+        omplirVariacio();
+        estadistiques.nanosegons = System.nanoTime() - inici;
+        if (receptor != null) {
+            receptor.rep(estadistiques);
+        }
+        return col;
+    }
+
+    /**
+     * Fa iteracions amb tots els fils fins que s'esgota el pressupost.
+     */
+    private void cerca() {
+        if (executor == null) {
+            treballadors[0].run();
+            return;
+        }
+        List<Future<?>> tasques = new ArrayList<>();
+        for (int i = 1; i < treballadors.length; i++) {
+            tasques.add(executor.submit(treballadors[i]));
+        }
+        treballadors[0].run();
+        for (Future<?> tasca : tasques) {
+            try {
+                tasca.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Error a la cerca MCTS", ex.getCause());
+            }
+        }
+    }
+
+    /**
+     * Informa el receptor de progrés de la columna més visitada fins ara i de
+     * les simulacions fetes per tots els fils.
+     */
+    private void informaProgres(long ara) {
+        long playouts = 0;
+        int profunditat = 0;
+        for (Treballador t : treballadors) {
+            playouts += t.playouts;
+            profunditat = Math.max(profunditat, t.profunditat);
+        }
+        double segons = (ara - iniciCerca) / 1e9;
+        receptorProgres.progres(millorFill(0), profunditat, playouts, (segons > 0) ? playouts / segons : 0);
+    }
+
+    /**
+     * Retorna la columna del fill amb més visites; en cas d'empat, la més
+     * baixa. Si l'arrel no s'ha arribat a expandir, la primera columna jugable.
+     */
+    private int millorFill(int node) {
+        int primer = fills.get(node);
+        if (primer <= 0) {
+            for (int col : CENTRE) {
+                if (arrel.movpossible(col)) return col;
+            }
+            return -1;
+        }
+        int millor = primer;
+        for (int i = primer + 1; i < primer + nFills[node]; i++) {
+            int v = visites.get(i), m = visites.get(millor);
+            if (v > m || (v == m && columna[i] < columna[millor])) {
+                millor = i;
+            }
+        }
+        return columna[millor];
+    }
+
+    private int valorPerMil(int col) {
+        int primer = fills.get(0);
+        if (primer <= 0) return 0;
+        for (int i = primer; i < primer + nFills[0]; i++) {
+            if (columna[i] == col) {
+                int v = visites.get(i);
+                return (v == 0) ? 0 : (int) (punts.get(i) * 500L / v);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * La variació principal segueix el fill més visitat de cada node.
+     */
+    private void omplirVariacio() {
+        int node = 0;
+        int n = 0;
+        while (n < SearchStats.MAX_PV) {
+            int primer = fills.get(node);
+            if (primer <= 0) break;
+            int millor = primer;
+            for (int i = primer + 1; i < primer + nFills[node]; i++) {
+                if (visites.get(i) > visites.get(millor)) millor = i;
+            }
+            if (visites.get(millor) == 0) break;
+            estadistiques.variacioPrincipal[n++] = columna[millor];
+            node = millor;
+        }
+        estadistiques.longitudVariacio = n;
+    }
+
+    /**
+     * Crea els fills d'un node, un per columna jugable, si cap altre fil no
+     * ho està fent ja i si hi ha espai.
+     * @param p La posició del node.
+     * @return L'índex del primer fill, o un valor negatiu si no s'ha expandit.
+     */
+    private int expandeix(int node, Posicio p) {
+        if (!fills.compareAndSet(node, SENSE_FILLS, EXPANDINT)) {
+            return -1;
+        }
+        int k = 0;
+        for (int col = 0; col < MIDA; col++) {
+            if (p.movpossible(col)) k++;
+        }
+        int primer = nodesUsats.getAndAdd(k);
+        if (k == 0 || primer + k > capacitat) {
+            fills.set(node, SENSE_ESPAI);
+            return -1;
+        }
+        int i = primer;
+        for (int col : CENTRE) {
+            if (!p.movpossible(col)) continue;
+            columna[i] = (byte) col;
+            visites.set(i, 0);
+            punts.set(i, 0);
+            fills.set(i, SENSE_FILLS);
+            i++;
+        }
+        nFills[node] = (byte) k;
+        fills.set(node, primer); // Publica els fills als altres fils
+        return primer;
+    }
+
+    /**
+     * Tria el fill amb més UCB1. Els fills sense visites van primer.
+     */
+    private int selecciona(int node, int primer) {
+        int n = nFills[node];
+        double logPare = Math.log(Math.max(visites.get(node), 1));
+        int millor = primer;
+        double millorValor = Double.NEGATIVE_INFINITY;
+        for (int i = primer; i < primer + n; i++) {
+            int v = visites.get(i);
+            if (v == 0) {
+                return i;
+            }
+            double valor = punts.get(i) / (2.0 * v) + EXPLORACIO * Math.sqrt(logPare / v);
+            if (valor > millorValor) {
+                millorValor = valor;
+                millor = i;
+            }
+        }
+        return millor;
+    }
+
+    /**
+     * Un dels fils de la cerca, amb la seva posició de treball i el seu
+     * generador d'aleatoris.
+     */
+    private final class Treballador implements Runnable {
+        private final int[] cami = new int[MIDA * MIDA + 1]; // Nodes de la iteració en curs, des de l'arrel
+        private Posicio p;
+        private long llavor; // Estat del xorshift
+        volatile long playouts; // Iteracions de l'última cerca, o de la que està fent
+        int profunditat; // Nodes de l'arbre del camí més llarg de l'última cerca
+
+        Treballador(int id) {
+            llavor = 0x9E3779B97F4A7C15L * (id + 1);
+        }
+
+        @Override
+        public void run() {
+            if (p == null) {
+                p = new Posicio(arrel);
+            }
+            long fetes = 0;
+            long properProgres = iniciCerca + NANOS_ENTRE_PROGRESSOS;
+            playouts = 0;
+            profunditat = 0;
+            while (!aturaAra) {
+                if (limitPlayouts > 0 && comptador.getAndIncrement() >= limitPlayouts) break;
+                if (fetes > 0 && (fetes & (ITERACIONS_ENTRE_CONSULTES - 1)) == 0) {
+                    long ara = System.nanoTime();
+                    if (limitNanos != 0 && ara > limitNanos) break;
+                    if (this == treballadors[0] && receptorProgres != null && ara >= properProgres) {
+                        properProgres = ara + NANOS_ENTRE_PROGRESSOS;
+                        informaProgres(ara);
+                    }
+                }
+                iteracio();
+                playouts = ++fetes;
+            }
+        }
+
+        private void iteracio() {
+            p.carrega(arrel);
+            int n = 0;
+            int node = 0;
+            int color = colorArrel; // Color que mou al node
+            boolean expandit = false;
+            int guanyador;
+            cami[n++] = 0;
+            while (true) {
+                int primer = fills.get(node);
+                if (primer <= 0) {
+                    if (expandit || (primer = expandeix(node, p)) <= 0) {
+                        guanyador = simula(color);
+                        break;
+                    }
+                    expandit = true;
+                }
+                int fill = selecciona(node, primer);
+                visites.addAndGet(fill, PERDUA_VIRTUAL);
+                cami[n++] = fill;
+                int col = columna[fill];
+                p.afegeix(col, color);
+                if (p.solucio(col, color)) {
+                    guanyador = color;
+                    break;
+                }
+                if (!p.espotmoure()) {
+                    guanyador = 0;
+                    break;
+                }
+                node = fill;
+                color = -color;
+            }
+            profunditat = Math.max(profunditat, n - 1);
+
+            // Els nodes senars els ha jugat el color de l'arrel, i els parells el rival
+            for (int j = 0; j < n; j++) {
+                int jugador = (j % 2 == 1) ? colorArrel : -colorArrel;
+                int guany = (guanyador == 0) ? 1 : (guanyador == jugador ? 2 : 0);
+                if (guany != 0) {
+                    punts.addAndGet(cami[j], guany);
+                }
+                visites.addAndGet(cami[j], (j == 0) ? 1 : 1 - PERDUA_VIRTUAL);
+            }
+        }
+
+        /**
+         * Juga la partida fins al final des de p.
+         * @param color El color que mou.
+         * @return El color guanyador, o 0 si són taules.
+         */
+        private int simula(int color) {
+            while (p.espotmoure()) {
+                long jugables = p.jugables();
+                if ((p.amenaces(color) & jugables) != 0) {
+                    return color;
+                }
+                for (int k = aleatori(Long.bitCount(jugables)); k > 0; k--) {
+                    jugables &= jugables - 1;
+                }
+                p.afegeix(Long.numberOfTrailingZeros(jugables) / MIDA, color);
+                color = -color;
+            }
+            return 0;
+        }
+
+        private int aleatori(int n) {
+            llavor ^= llavor << 13;
+            llavor ^= llavor >>> 7;
+            llavor ^= llavor << 17;
+            return (int) ((llavor >>> 33) % n);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Mètriques acumulades dels moviments d'un jugador: latència per moviment,
+ * nodes per segon, factor de ramificació efectiu, proporció de podes i
+ * profunditat assolida. Les estadístiques de cerca només hi són si el
+ * jugador en dona, és a dir, si és un MinimaxPlayer o un MctsPlayer (vegeu
+ * JugadorInstrumentat).
+ *
+ * És segura entre fils: diversos JugadorInstrumentat hi poden registrar
+ * alhora mentre JMX o BolcatMetriques la llegeixen.
+ */
+public class MetriquesJugador implements MetriquesJugadorMBean {
+    private final String nom;
+    private final HistogramaLatencia latencies = new HistogramaLatencia();
+    private long nodes; // Nodes de totes les cerques
+    private long nanosCerca; // Durada de les cerques que han informat nodes
+    private long talls;
+    private long tallsPrimerMoviment;
+    private long cerques; // Moviments amb estadístiques de cerca
+    private double sumaRamificacio;
+    private long sumaProfunditat;
+    private int profunditatMaxima;
+
+    /**
+     * @param nom Nom amb què es publiquen les mètriques.
+     */
+    public MetriquesJugador(String nom) {
+        this.nom = nom;
+    }
+
+    /**
+     * Registra un moviment.
+     * @param nanos Temps que ha tardat el jugador a respondre.
+     * @param estadistiques Estadístiques de la cerca, o null si el jugador no en dona.
+     */
+    public synchronized void registra(long nanos, SearchStats estadistiques) {
+        latencies.registra(nanos);
+        if (estadistiques == null || estadistiques.isDelLlibre() || estadistiques.isPonderada()) {
+            return; // No hi ha hagut cerca en aquest moviment
+        }
+        int profunditat = estadistiques.getProfunditatAssolida();
+        long n = estadistiques.getNodes();
+        nodes += n;
+        nanosCerca += estadistiques.getNanosegons();
+        talls += estadistiques.getTalls();
+        tallsPrimerMoviment += estadistiques.getTallsPrimerMoviment();
+        cerques++;
+        sumaProfunditat += profunditat;
+        profunditatMaxima = Math.max(profunditatMaxima, profunditat);
+        if (n > 0 && profunditat > 0) {
+            sumaRamificacio += Math.pow(n, 1.0 / profunditat);
+        }
+    }
+
+    /**
+     * Publica les mètriques al servidor JMX de la plataforma.
+     * @return El nom JMX amb què s'han registrat.
+     */
+    public ObjectName registraJmx() {
+        try {
+            ObjectName nomJmx = new ObjectName("edu.epsevg.prop.lab.c4:type=MetriquesJugador,name=" + ObjectName.quote(nom));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, nomJmx);
+            return nomJmx;
+        } catch (JMException ex) {
+            throw new IllegalStateException("No s'han pogut publicar les mètriques de " + nom, ex);
+        }
+    }
+
+    @Override
+    public String getNom() {
+        return nom;
+    }
+
+    @Override
+    public synchronized long getMoviments() {
+        return latencies.getTotal();
+    }
+
+    @Override
+    public synchronized double getLatenciaMitjanaMs() {
+        return latencies.getMitjana() / 1e6;
+    }
+
+    @Override
+    public synchronized double getLatenciaP50Ms() {
+        return latencies.getPercentil(50) / 1e6;
+    }
+
+    @Override
+    public synchronized double getLatenciaP90Ms() {
+        return latencies.getPercentil(90) / 1e6;
+    }
+
+    @Override
+    public synchronized double getLatenciaP99Ms() {
+        return latencies.getPercentil(99) / 1e6;
+    }
+
+    @Override
+    public synchronized double getLatenciaP999Ms() {
+        return latencies.getPercentil(99.9) / 1e6;
+    }
+
+    @Override
+    public synchronized double getLatenciaMaximaMs() {
+        return latencies.getMaxim() / 1e6;
+    }
+
+    @Override
+    public synchronized long getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public synchronized double getNodesPerSegon() {
+        return (nanosCerca == 0) ? 0 : nodes * 1e9 / nanosCerca;
+    }
+
+    /**
+     * Mitjana del factor de ramificació efectiu de cada cerca, nodes^(1/profunditat).
+     */
+    @Override
+    public synchronized double getFactorRamificacio() {
+        return (cerques == 0) ? 0 : sumaRamificacio / cerques;
+    }
+
+    /**
+     * Podes per node visitat.
+     */
+    @Override
+    public synchronized double getRatiTalls() {
+        return (nodes == 0) ? 0 : (double) talls / nodes;
+    }
+
+    /**
+     * Proporció de podes provocades pel primer moviment provat.
+     */
+    @Override
+    public synchronized double getRatiTallsPrimerMoviment() {
+        return (talls == 0) ? 0 : (double) tallsPrimerMoviment / talls;
+    }
+
+    @Override
+    public synchronized double getProfunditatMitjana() {
+        return (cerques == 0) ? 0 : (double) sumaProfunditat / cerques;
+    }
+
+    @Override
+    public synchronized int getProfunditatMaxima() {
+        return profunditatMaxima;
+    }
+
+    @Override
+    public synchronized void reinicia() {
+        latencies.reinicia();
+        nodes = 0;
+        nanosCerca = 0;
+        talls = 0;
+        tallsPrimerMoviment = 0;
+        cerques = 0;
+        sumaRamificacio = 0;
+        sumaProfunditat = 0;
+        profunditatMaxima = 0;
+    }
+}
@@ -0,0 +1,39 @@
+package edu.epsevg.prop.lab.c4;
+
+/**
+ * Interfície JMX de MetriquesJugador. Les latències són en mil·lisegons.
+ */
+public interface MetriquesJugadorMBean {
+
+    String getNom();
+
+    long getMoviments();
+
+    double getLatenciaMitjanaMs();
+
+    double getLatenciaP50Ms();
+
+    double getLatenciaP90Ms();
+
+    double getLatenciaP99Ms();
+
+    double getLatenciaP999Ms();
+
+    double getLatenciaMaximaMs();
+
+    long getNodes();
+
+    double getNodesPerSegon();
+
+    double getFactorRamificacio();
+
+    double getRatiTalls();
+
+    double getRatiTallsPrimerMoviment();
+
+    double getProfunditatMitjana();
+
+    int getProfunditatMaxima();
+
+    void reinicia();
+}
@@ -1,25 +1,98 @@
 package edu.epsevg.prop.lab.c4;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
- * Classe MinimaxPlayer que implementa l'algorisme Minimax amb poda Alpha-Beta
- * per al joc Connecta 4.
+ * Classe MinimaxPlayer que implementa l'algorisme Minimax, en forma negamax,
+ * per al joc Connecta 4. Per defecte fa poda Alpha-Beta; amb setEstrategia es
+ * pot triar una altra SearchStrategy.
  */
-public class MinimaxPlayer implements Jugador, IAuto {
+public class MinimaxPlayer implements JugadorAturable, IAuto {
     final private int HEURISTICA_MAXIMA = Integer.MAX_VALUE; // Valor màxim per a l'heurística
     private int colorJugador; // Color actual del jugador
     private String nomJugador; // Nom del jugador
     private int profunditatRecerca; // Profunditat de recerca per a l'algorisme Minimax
     private int jugadesExplorades; // Comptador de jugades explorades
     private int jugadesReals; // Comptador de jugades reals
-    private boolean estats = true;
+    private long nodesVisitats; // Nodes visitats per la cerca en curs
+    private long talls; // Podes alfa-beta de la cerca en curs
+    private long tallsPrimer; // Podes provocades pel primer moviment provat
+    private final SearchStats estadistiques = new SearchStats(); // Estadístiques de l'última cerca
+    private ReceptorEstadistiques receptor; // On s'envien les estadístiques, null si enlloc
+    private final int[][] variacio = new int[SearchStats.MAX_PV + 1][SearchStats.MAX_PV + 1]; // Variació principal per ply
+    private final int[] longitudVariacio = new int[SearchStats.MAX_PV + 1];
+    private int buidesArrel; // Caselles buides a l'arrel, per saber el ply de cada node
+    private Evaluator avaluador; // Heurística de la cerca
+    private OrdenacioMoviments ordenacio = new OrdenacioMoviments(); // null per provar les columnes en ordre
+    private final int[][] ordres = new int[SearchStats.MAX_PV + 1][Posicio.MIDA]; // Columnes a provar a cada ply
+    private Posicio posicio; // Posició de l'arrel, reaprofitada d'un moviment al següent
+    private LlibreObertures llibre; // Llibre d'obertures, null si no se'n fa servir
+    private int casellesSolucionador; // Amb aquestes caselles buides o menys es resol la posició, 0 mai
+    private SolucionadorFinal solucionador; // Solucionador exacte del final de partida
+    private ExecutorService filPonderacio; // Fil de la ponderació, null si no està activada
+    private MinimaxPlayer ponderador; // Cercador que pondera en temps del rival
+    private Future<Integer> ponderacio; // Ponderació en curs o acabada, null si no n'hi ha
+    private long clauPonderada; // Hash de la posició que s'està ponderant
+    private volatile boolean cancelada; // La ponderació s'ha d'abandonar
+    private volatile boolean esperantPonderacio; // El moviment espera una ponderació encertada
+    private long nanosCpu; // Temps de CPU de l'última cerca d'aquest cercador
+    private int encertsPonderacio; // Moviments del rival que s'havien previst
+    private int errorsPonderacio; // Moviments del rival que no s'havien previst
+    private long cpuPonderacio; // Temps de CPU total de la ponderació, en ns
+    private TaulaTransposicioAbstracta taula; // Taula de transposicions, null si no se'n fa servir
+    private boolean taulaPropia; // La taula l'ha creat el jugador i no ve de fora
+    private int millorMoviment; // Millor columna del darrer node expandit, per guardar-la a la taula
+    private int valorArrel; // Valor de la millor columna de la darrera cerca des de l'arrel
+    private long tempsMaxim; // Temps per moviment en ms, 0 si la profunditat és fixa
+    private long limitCerca; // Instant (System.nanoTime) en què cal aturar la cerca, 0 si no n'hi ha
+    private boolean aturada; // Cert quan s'ha esgotat el temps i la iteració en curs no val
+    private int nodesRellotge; // Nodes visitats des de l'última consulta del rellotge
+    private ExecutorService executor; // Si no és null, les columnes de l'arrel es cerquen en paral·lel
+    private MinimaxPlayer[] treballadors; // Un cercador per columna de l'arrel en mode paral·lel
+    private SearchStrategy estrategia = EstrategiaCerca.ALFA_BETA; // Com es cerquen els fills de cada node
+    private boolean podaAmenaces = true; // Mirar les amenaces abans d'expandir cada node
+    private boolean aspiracio; // Amb temps limitat, cada iteració comença amb una finestra al voltant de l'anterior
+    private long recerques; // Cerques repetides per PVS, per reduccions o per finestres d'aspiració fallides
+    private long permesesArrel = -1L; // Caselles de l'arrel que es cerquen, segons les amenaces
+    private boolean simetria = true; // Una posició i la seva reflectida comparteixen entrada a la taula
+    private long consultesTaula; // Consultes a la taula de transposicions de la cerca en curs
+    private long encertsTaula; // Consultes que han trobat la posició (o la reflectida)
+    private boolean reduccions; // Cercar menys profundes les jugades tranquil·les que s'ordenen tard
+    private boolean extensions; // Cercar un ply més les jugades que tapen una amenaça del rival
+    private int plyMaxim; // Ply on deixen d'allargar-se les línies forçades a la iteració en curs
+    private ReceptorProgres receptorProgres; // On s'informa del progrés de la cerca, null si enlloc
+    private volatile boolean aturaAra; // S'ha demanat tornar ja la millor columna trobada
+    private boolean aturable; // Ja hi ha una columna que tornar, així que la cerca es pot aturar
+    private int columnaProgres; // Millor columna trobada fins ara, la que s'informa al receptor de progrés
+    private int profunditatProgres; // Profunditat a la qual s'ha trobat columnaProgres
+    private long iniciCerca; // Instant (System.nanoTime) en què ha començat la cerca
+    private long properProgres; // Instant a partir del qual es torna a informar del progrés
+
+    private static final int MIDA_TAULA_MB = 16; // Memòria per defecte de la taula de transposicions
+    private static final long CLAU_BLAVES = 0x9E3779B97F4A7C15L; // Distingeix les posicions avaluades pel color -1
+    private static final int NODES_ENTRE_CONSULTES = 1024; // Cada quants nodes es mira el rellotge (potència de 2)
+    private static final long TEMPS_PONDERACIO_MS = 24L * 3600 * 1000; // La ponderació amb temps dura fins que es cancel·la
+    private static final int FINESTRA_ASPIRACIO = 200; // Mitja amplada de la finestra d'aspiració
+    private static final int JUGADES_SENSE_REDUCCIO = 3; // Les primeres jugades de cada node no es redueixen
+    private static final int PROFUNDITAT_MINIMA_REDUCCIO = 3; // Més a prop de les fulles reduir no estalvia res
+    private static final long NANOS_ENTRE_PROGRESSOS = 100000000L; // Cada quant s'informa del progrés (100 ms)
 
     /**
-     * Constructor de MinimaxPlayer amb profunditat específica.
+     * Constructor de MinimaxPlayer amb profunditat específica. Mostra les
+     * estadístiques de cada cerca per la consola.
      * @param profunditat Profunditat de recerca per a l'algorisme Minimax.
      */
     public MinimaxPlayer(int profunditat) {
-        this.profunditatRecerca = profunditat;
-        nomJugador = "Mariona & Pau's player amb la profunditat de: " + profunditat;
+        this(profunditat, true);
     }
 
     /**
@@ -28,18 +101,375 @@ public class MinimaxPlayer implements Jugador, IAuto {
      * @param stats Si s'han de mostrar estadístiques.
      */
     public MinimaxPlayer(int profunditat, boolean stats) {
-        this.estats = stats;
+        this(profunditat, stats, new AvaluadorIncremental());
+    }
+
+    /**
+     * Constructor de MinimaxPlayer amb una taula de transposicions donada.
+     * @param profunditat Profunditat de recerca.
+     * @param stats Si s'han de mostrar estadístiques.
+     * @param taula Taula de transposicions a fer servir, o null per cercar sense taula.
+     */
+    public MinimaxPlayer(int profunditat, boolean stats, TaulaTransposicioAbstracta taula) {
+        this(profunditat, stats, taula, new AvaluadorIncremental());
+    }
+
+    /**
+     * Constructor de MinimaxPlayer amb una heurística donada. Mostra les
+     * estadístiques de cada cerca per la consola.
+     * @param profunditat Profunditat de recerca.
+     * @param avaluador Heurística per puntuar les fulles.
+     */
+    public MinimaxPlayer(int profunditat, Evaluator avaluador) {
+        this(profunditat, true, avaluador);
+    }
+
+    /**
+     * Constructor de MinimaxPlayer amb una heurística donada i una taula de
+     * transposicions pròpia.
+     * @param profunditat Profunditat de recerca.
+     * @param stats Si s'han de mostrar estadístiques.
+     * @param avaluador Heurística per puntuar les fulles.
+     */
+    public MinimaxPlayer(int profunditat, boolean stats, Evaluator avaluador) {
+        this(profunditat, stats, new TaulaTransposicio(MIDA_TAULA_MB, TaulaTransposicio.Reemplacament.PROFUNDITAT), avaluador);
+        this.taulaPropia = true;
+    }
+
+    /**
+     * Constructor de MinimaxPlayer amb totes les opcions de la cerca. La
+     * resta de constructors públics hi acaben cridant.
+     * @param profunditat Profunditat de recerca.
+     * @param stats Si s'han de mostrar estadístiques.
+     * @param taula Taula de transposicions a fer servir, o null per cercar sense taula.
+     *        El jugador no n'avança la generació: ho fa qui la comparteix.
+     * @param avaluador Heurística per puntuar les fulles.
+     */
+    public MinimaxPlayer(int profunditat, boolean stats, TaulaTransposicioAbstracta taula, Evaluator avaluador) {
+        this.receptor = stats ? ReceptorEstadistiques.CONSOLA : null;
         this.profunditatRecerca = profunditat;
+        this.taula = taula;
+        this.avaluador = avaluador;
         nomJugador = "Mariona & Pau's player amb la profunditat de: " + profunditat;
     }
 
+    /**
+     * Constructor de MinimaxPlayer amb temps limitat per moviment.
+     * Fa aprofundiment iteratiu des de profunditat 1 i, quan s'acaba el temps,
+     * retorna la millor columna de l'última iteració completada. Mostra les
+     * estadístiques de cada cerca per la consola.
+     * @param profunditatMaxima Profunditat a partir de la qual ja no s'aprofundeix més.
+     * @param milisegons Temps màxim de cerca per moviment, en ms.
+     */
+    public MinimaxPlayer(int profunditatMaxima, long milisegons) {
+        this(profunditatMaxima, true);
+        this.tempsMaxim = milisegons;
+        nomJugador = "Mariona & Pau's player amb un temps de: " + milisegons + " ms";
+    }
+
     /**
      * Constructor per defecte de MinimaxPlayer amb profunditat predefinida.
      */
     public MinimaxPlayer() {
-        int profunditat = 5;
+        this(5);
+    }
+
+    /**
+     * Constructor dels cercadors de la cerca paral·lela i del ponderador:
+     * comparteixen la configuració i la taula de transposicions del jugador.
+     * @param pare El jugador que reparteix la feina.
+     */
+    private MinimaxPlayer(MinimaxPlayer pare) {
+        copiaConfiguracio(pare);
+    }
+
+    /**
+     * Pren la configuració de la cerca del jugador. Les heurístiques i
+     * l'ordenació tenen estat, així que no es comparteixen: només se'n crea
+     * una de nova si encara no n'hi ha cap del mateix tipus.
+     */
+    private void copiaConfiguracio(MinimaxPlayer pare) {
+        this.profunditatRecerca = pare.profunditatRecerca;
+        this.taula = pare.taula;
+        if (avaluador == null || avaluador.getClass() != pare.avaluador.getClass()) {
+            this.avaluador = pare.avaluador.copia();
+        }
+        if ((pare.ordenacio != null) != (ordenacio != null)) {
+            this.ordenacio = (pare.ordenacio != null) ? new OrdenacioMoviments() : null;
+        }
+        this.estrategia = pare.estrategia;
+        this.podaAmenaces = pare.podaAmenaces;
+        this.simetria = pare.simetria;
+        this.reduccions = pare.reduccions;
+        this.extensions = pare.extensions;
+        this.aspiracio = pare.aspiracio;
+        nomJugador = pare.nomJugador;
+    }
+
+    /**
+     * Activa la cerca paral·lela: cada columna de l'arrel es cerca en una tasca
+     * de l'executor (per exemple un ForkJoinPool). Amb profunditat fixa, la
+     * columna escollida és la mateixa que amb la cerca seqüencial.
+     * @param executor L'executor on llançar les tasques, o null per cercar en un sol fil.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        if (executor != null) {
+            taulaCompartida();
+        }
+    }
+
+    /**
+     * Quan la taula del jugador l'han de compartir diversos fils, la passa
+     * fora del heap perquè el recol·lector no l'hagi de tenir en compte. Les
+     * taules donades al constructor es fan servir tal com són.
+     */
+    private void taulaCompartida() {
+        if (taulaPropia && !(taula instanceof TaulaTransposicioDirecta)) {
+            taula = new TaulaTransposicioDirecta(MIDA_TAULA_MB, TaulaTransposicio.Reemplacament.PROFUNDITAT);
+            treballadors = null;
+        }
+    }
+
+    /**
+     * Canvia el pressupost de les cerques següents, per exemple quan cada
+     * petició del servidor de moviments en porta un de diferent.
+     * @param profunditat Profunditat de recerca, o màxima si hi ha temps limitat.
+     * @param milisegons Temps màxim per moviment en ms, o 0 per cercar a profunditat fixa.
+     */
+    public void setPressupost(int profunditat, long milisegons) {
         this.profunditatRecerca = profunditat;
-        nomJugador = "Mariona & Pau's player amb la profunditat de: " + profunditat;
+        this.tempsMaxim = milisegons;
+    }
+
+    /**
+     * Activa o desactiva l'ordenació de moviments (moviment de la taula,
+     * assassins, història i centre primer). Sense ordenació les columnes es
+     * proven d'esquerra a dreta. La columna escollida és la mateixa en els dos
+     * casos; només canvia el nombre de nodes.
+     * @param activa Cert per ordenar els moviments.
+     */
+    public void setOrdenacioMoviments(boolean activa) {
+        this.ordenacio = activa ? new OrdenacioMoviments() : null;
+        this.treballadors = null;
+    }
+
+    /**
+     * Tria l'estratègia de cerca: minimax sense poda, alfa-beta (per defecte)
+     * o cerca de variació principal. La columna escollida és la mateixa amb
+     * totes; només canvia el nombre de nodes.
+     * @param estrategia L'estratègia, per exemple una de EstrategiaCerca.
+     */
+    public void setEstrategia(SearchStrategy estrategia) {
+        this.estrategia = estrategia;
+        this.treballadors = null;
+    }
+
+    /**
+     * Activa o desactiva la detecció d'amenaces abans d'expandir cada node
+     * (per defecte activada). Si el color que mou pot fer 4 en ratlla, el
+     * node val la victòria sense expandir-lo; si el rival té una amenaça
+     * jugable només es prova de tapar-la, si en té dues el node està perdut,
+     * i mai es juga just a sota d'una amenaça del rival.
+     * @param activa Cert per podar amb les amenaces.
+     */
+    public void setPodaAmenaces(boolean activa) {
+        this.podaAmenaces = activa;
+        this.treballadors = null;
+    }
+
+    /**
+     * Fa que una posició i la seva reflectida comparteixin entrada a la taula
+     * de transposicions (per defecte activat): la clau és la canònica de
+     * Posicio i el millor moviment es guarda orientat com la posició canònica.
+     * Les dues posicions valen el mateix, però l'heurística no és del tot
+     * simètrica, així que amb profunditat fixa el valor trobat pot variar
+     * lleugerament respecte de la cerca sense simetria.
+     * @param activa Cert per compartir les entrades de les posicions reflectides.
+     */
+    public void setSimetria(boolean activa) {
+        this.simetria = activa;
+        this.treballadors = null;
+    }
+
+    /**
+     * Activa o desactiva les reduccions de les jugades tardanes (per defecte
+     * desactivades). A partir de la quarta jugada de cada node, les que no
+     * fan ni tapen cap amenaça es cerquen primer un ply menys profundes; si
+     * el resultat millora alfa, es tornen a cercar a la profunditat sencera.
+     * @param activa Cert per reduir les jugades tardanes.
+     */
+    public void setReduccions(boolean activa) {
+        this.reduccions = activa;
+        this.treballadors = null;
+    }
+
+    /**
+     * Activa o desactiva les extensions de les línies forçades (per defecte
+     * desactivades). La jugada que tapa una amenaça jugable del rival es cerca
+     * un ply més, de manera que cada amenaça i la seva resposta allarguen la
+     * línia un ply i l'heurística no avalua el tauler a mig atac. Per no
+     * allargar la cerca sense fi, a cada iteració no s'estén cap jugada més
+     * enllà del doble de la profunditat.
+     * @param activa Cert per estendre les jugades forçades.
+     */
+    public void setExtensions(boolean activa) {
+        this.extensions = activa;
+        this.treballadors = null;
+    }
+
+    /**
+     * @return L'estratègia de cerca actual.
+     */
+    public SearchStrategy getEstrategia() {
+        return estrategia;
+    }
+
+    /**
+     * Activa o desactiva les finestres d'aspiració. Només tenen efecte amb
+     * temps limitat i cerca en un sol fil: cada iteració de l'aprofundiment
+     * comença amb una finestra estreta al voltant del valor de l'anterior, i
+     * si el valor en surt es repeteix amb la finestra sencera.
+     * @param activa Cert per fer servir finestres d'aspiració.
+     */
+    public void setAspiracio(boolean activa) {
+        this.aspiracio = activa;
+    }
+
+    /**
+     * Fa que el jugador consulti un llibre d'obertures abans de cercar. Si la
+     * posició hi és, retorna la columna del llibre sense cercar.
+     * @param llibre El llibre, o null per cercar sempre.
+     */
+    public void setLlibreObertures(LlibreObertures llibre) {
+        this.llibre = llibre;
+    }
+
+    /**
+     * Activa el solucionador exacte del final: quan queden com a molt les
+     * caselles buides indicades, el jugador resol la posició fins al final en
+     * lloc de fer la cerca heurística.
+     * @param caselles Caselles buides a partir de les quals es resol, o 0 per no resoldre mai.
+     */
+    public void setSolucionadorFinal(int caselles) {
+        this.casellesSolucionador = caselles;
+        if (caselles > 0 && solucionador == null) {
+            solucionador = new SolucionadorFinal(MIDA_TAULA_MB);
+        }
+    }
+
+    /**
+     * Activa o desactiva la ponderació. Amb ponderació, després de tornar
+     * cada moviment el jugador cerca en un fil de fons la posició que
+     * quedaria si el rival juga la resposta esperada (la segona jugada de la
+     * variació principal). Si el rival la juga, el moviment següent aprofita
+     * la cerca; si no, es cancel·la i es cerca com sempre.
+     * @param activa Cert per ponderar.
+     */
+    public void setPonderacio(boolean activa) {
+        if (activa && filPonderacio == null) {
+            taulaCompartida();
+            filPonderacio = Executors.newSingleThreadExecutor(r -> {
+                Thread fil = new Thread(r, "ponderacio-" + nomJugador);
+                fil.setDaemon(true);
+                return fil;
+            });
+            ponderador = new MinimaxPlayer(this);
+        } else if (!activa && filPonderacio != null) {
+            cancelaPonderacio();
+            filPonderacio.shutdownNow();
+            filPonderacio = null;
+            ponderador = null;
+        }
+    }
+
+    /**
+     * @return Nombre de moviments del rival que la ponderació havia previst.
+     */
+    public int getEncertsPonderacio() {
+        return encertsPonderacio;
+    }
+
+    /**
+     * @return Nombre de moviments del rival que la ponderació no havia previst.
+     */
+    public int getErrorsPonderacio() {
+        return errorsPonderacio;
+    }
+
+    /**
+     * @return Proporció de moviments del rival previstos, entre 0 i 1.
+     */
+    public double getRatiEncertsPonderacio() {
+        int total = encertsPonderacio + errorsPonderacio;
+        return (total == 0) ? 0 : (double) encertsPonderacio / total;
+    }
+
+    /**
+     * Temps de CPU gastat ponderant, comptant només les ponderacions que ja
+     * s'han recollit.
+     * @return El temps, en nanosegons.
+     */
+    public long getTempsCpuPonderacio() {
+        return cpuPonderacio;
+    }
+
+    /**
+     * Canvia el destí de les estadístiques de cada cerca.
+     * @param receptor El receptor, o null per no enviar-les enlloc.
+     */
+    public void setReceptorEstadistiques(ReceptorEstadistiques receptor) {
+        this.receptor = receptor;
+    }
+
+    /**
+     * Fa que el jugador informi del progrés de cada cerca: en acabar cada
+     * iteració i, en la cerca en un sol fil, cada NANOS_ENTRE_PROGRESSOS.
+     * Amb temps limitat s'informa de la millor columna de l'última iteració
+     * completada; amb profunditat fixa, de la millor columna de l'arrel
+     * cercada fins ara. El receptor no canvia com es cerca.
+     * @param receptor El receptor, o null per no informar del progrés.
+     */
+    @Override
+    public void setReceptorProgres(ReceptorProgres receptor) {
+        this.receptorProgres = receptor;
+    }
+
+    /**
+     * Demana que la cerca en curs acabi com més aviat millor. Es pot cridar
+     * des de qualsevol fil: la cerca se n'adona en menys de
+     * NODES_ENTRE_CONSULTES nodes. Amb temps limitat abandona la iteració a
+     * mitges i moviment torna la millor columna de l'última iteració
+     * completada, un cop acabada la primera; amb profunditat fixa torna la
+     * millor de les columnes de l'arrel ja cercades. Si es crida abans que
+     * comenci la cerca, la cerca s'atura tan aviat com pot; la petició
+     * s'oblida quan moviment torna. Si el moviment espera una ponderació
+     * encertada, s'atura la ponderació i es torna la columna que hagi trobat.
+     */
+    @Override
+    public void aturaCerca() {
+        aturaAra = true;
+        MinimaxPlayer[] fills = treballadors;
+        if (fills != null) {
+            for (MinimaxPlayer fill : fills) {
+                if (fill != null) {
+                    fill.aturaAra = true;
+                }
+            }
+        }
+        MinimaxPlayer fill = ponderador;
+        if (esperantPonderacio && fill != null) {
+            fill.aturaCerca();
+        }
+    }
+
+    /**
+     * Retorna les estadístiques de l'última cerca. La instància es reutilitza
+     * a cada moviment.
+     * @return Les estadístiques de l'última cerca.
+     */
+    public SearchStats getEstadistiques() {
+        return estadistiques;
     }
 
     /**
@@ -59,391 +489,882 @@ public class MinimaxPlayer implements Jugador, IAuto {
      */
     @Override
     public int moviment(Tauler tauler, int colorJugador) {
-        
-        if(estats == true){
-            jugadesExplorades = 0;
-            jugadesReals++;
-            int act_jug = calcularMinimax(tauler, profunditatRecerca);
-            System.out.println("# de nodes explorats: " + jugadesExplorades);
-            System.out.println("columna escollida per fer el moviment: " + act_jug);     
-        }
-        
+        // La cerca treballa sobre bitboards; només convertim el tauler aquí
+        if (posicio == null) {
+            posicio = new Posicio(tauler);
+        } else {
+            posicio.carrega(tauler);
+        }
         this.colorJugador = colorJugador;
 
-        jugadesExplorades = 0;  
         jugadesReals++;
-        int columna = calcularMinimax(tauler, profunditatRecerca);
-        // és redundant però ho he fet al principi i així ho veig més clar
+        int columna;
+        try {
+            columna = mouSenseAturar(posicio);
+        } finally {
+            aturaAra = false; // La petició d'aturar-se només val per a aquest moviment
+        }
+        if (filPonderacio != null) {
+            comencaPonderacio(posicio, columna);
+        }
+        if (receptor != null) {
+            receptor.rep(estadistiques);
+        }
 
         return columna;
     }
+
     /**
-     * Implementa l'algorisme Minimax amb poda Alpha-Beta.
-     * @param t El tauler actual del joc.
-     * @param profunditat La profunditat actual de recerca.
-     * @return La millor columna per a moure's segons l'algorisme.
+     * Tria la columna per a la posició carregada: de la ponderació, del
+     * llibre, del solucionador o de la cerca, en aquest ordre.
      */
-    private int calcularMinimax(Tauler t, int profunditat) {
-        int col = 0;
-        Integer valor = -HEURISTICA_MAXIMA - 1;
-        int alfa = -HEURISTICA_MAXIMA;
-        int beta = HEURISTICA_MAXIMA;
-
-        return mirarColumnes(t, profunditat, col, valor, alfa, beta);
+    private int mouSenseAturar(Posicio posicio) {
+        int columna = recullPonderacio(posicio);
+        if (columna < 0) {
+            columna = consultaLlibre(posicio);
+        }
+        if (columna < 0 && posicio.casellesBuides() <= casellesSolucionador) {
+            columna = resolFinal(posicio);
+        }
+        if (columna < 0) {
+            columna = calcularMinimax(posicio, profunditatRecerca);
+        }
+        return columna;
     }
+
     /**
-     * Explora totes les columnes del tauler per trobar el millor moviment següent.
-     * @param t El tauler actual.
-     * @param profunditat Profunditat actual de recerca.
-     * @param col Columna actual a explorar.
-     * @param valor Millor valor trobat fins ara.
-     * @param alfa Millor valor que el maximizador pot garantir.
-     * @param beta Millor valor que el minimizador pot garantir.
-     * @return La millor columna per realitzar un moviment.
+     * Comença a ponderar la posició que quedarà després de la columna
+     * escollida i la resposta esperada del rival.
      */
-    private int mirarColumnes(Tauler t, int profunditat, int col, Integer valor, int alfa, int beta) {
-        for (int i = 0; i < t.getMida(); i++) {
-            if (!t.movpossible(i)) continue;
+    private void comencaPonderacio(Posicio t, int columna) {
+        if (estadistiques.longitudVariacio < 2 || estadistiques.variacioPrincipal[0] != columna) {
+            return; // No sabem què jugarà el rival
+        }
+        int resposta = estadistiques.variacioPrincipal[1];
+        final Posicio p = new Posicio(t);
+        p.afegeix(columna, colorJugador);
+        if (p.solucio(columna, colorJugador) || !p.espotmoure() || !p.movpossible(resposta)) {
+            return;
+        }
+        p.afegeix(resposta, -colorJugador);
+        if (p.solucio(resposta, -colorJugador) || !p.espotmoure()) {
+            return;
+        }
 
-            Tauler aux = new Tauler(t);
-            aux.afegeix(i, colorJugador); //Cal fer un tauler auxiliar cada cop
-            int min = valorMinim(aux, i, alfa, beta, profunditat - 1);
-            if (valor < min) {
-                col = i;
-                valor = min;
+        // La configuració pot haver canviat des del moviment anterior
+        final MinimaxPlayer fill = ponderador;
+        fill.copiaConfiguracio(this);
+        fill.tempsMaxim = (tempsMaxim > 0) ? TEMPS_PONDERACIO_MS : 0;
+        fill.colorJugador = colorJugador;
+        fill.cancelada = false;
+        fill.aturaAra = false;
+        clauPonderada = p.getHash();
+        final int profunditat = profunditatRecerca;
+        ponderacio = filPonderacio.submit(() -> {
+            long inici = tempsCpu();
+            int col = fill.calcularMinimax(p, profunditat);
+            fill.nanosCpu = tempsCpu() - inici;
+            // Amb temps val l'última iteració completada a partir de la segona;
+            // amb profunditat fixa, la millor columna de l'arrel d'una cerca
+            // aturada amb aturaCerca, però no la d'una cerca cancel·lada
+            boolean valida = !fill.aturada || ((fill.tempsMaxim > 0)
+                    ? fill.estadistiques.profunditatAssolida > 1 : !fill.cancelada);
+            return valida ? col : -1;
+        });
+    }
+
+    /**
+     * Recull la ponderació en curs. Si la posició és la prevista n'aprofita el
+     * resultat, esperant-lo si cal (amb temps limitat, com a molt el temps per
+     * moviment, i en tot cas fins que es cridi aturaCerca); si no, la cancel·la.
+     * @return La columna de la ponderació, o -1 si no s'ha pogut aprofitar.
+     */
+    private int recullPonderacio(Posicio t) {
+        if (ponderacio == null) {
+            return -1;
+        }
+        if (t.getHash() != clauPonderada || ponderador.colorJugador != colorJugador) {
+            errorsPonderacio++;
+            cancelaPonderacio();
+            return -1;
+        }
+        encertsPonderacio++;
+        // Primer s'anuncia l'espera i després es mira la petició d'aturar-se:
+        // una crida concurrent a aturaCerca veu l'espera o és vista aquí
+        esperantPonderacio = true;
+        int col;
+        try {
+            if (aturaAra) {
+                ponderador.aturaCerca();
             }
-            if (beta < valor) {
-                break;
+            if (tempsMaxim > 0) {
+                try {
+                    ponderacio.get(tempsMaxim, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ex) {
+                    ponderador.cancelada = true;
+                } catch (InterruptedException | ExecutionException ex) {
+                    // Es tracta a esperaPonderacio
+                }
             }
-            alfa = Math.max(valor, alfa);
+            col = esperaPonderacio();
+        } finally {
+            esperantPonderacio = false;
+        }
+        if (col < 0) {
+            return -1;
         }
+        estadistiques.copia(ponderador.estadistiques);
+        estadistiques.ponderada = true;
         return col;
     }
 
     /**
-     * Avalua l'estat actual del tauler de joc.
-     * @param t El tauler de joc actual.
-     * @return Puntuació heurística de l'estat actual del tauler.
+     * Cancel·la la ponderació en curs i espera que s'aturi, perquè la cerca
+     * principal no competeixi amb ella per la CPU.
      */
-    private int avaluarTauler(Tauler t) {
-        ++jugadesExplorades;
-        int res = 0;
-        res = mirarFiC(t, res);
-
-        res += avaluarDiagonals(t);
-
-        return mirarHeuristica(res);
+    private void cancelaPonderacio() {
+        if (ponderacio != null) {
+            ponderador.cancelada = true;
+            esperaPonderacio();
+        }
     }
 
-    private int mirarFiC(Tauler t, int res) {
-        for (int i = t.getMida() - 1; i >= 0; --i) {
-            res += avaluarColumna(t, i);
-            res += (10 * avaluarFila(t, i) / (i + 1));  // Ponderem segons l'alçada del 4 en ratlla horitzontal
+    /**
+     * Espera el resultat de la ponderació en curs i en comptabilitza el temps de CPU.
+     * @return La columna, o -1 si la ponderació no ha acabat bé.
+     */
+    private int esperaPonderacio() {
+        Future<Integer> f = ponderacio;
+        ponderacio = null;
+        try {
+            int col = f.get();
+            cpuPonderacio += ponderador.nanosCpu;
+            return col;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Error a la ponderació", ex.getCause());
         }
-        return res;
     }
 
-    private int mirarHeuristica(int res) {
-        if (res >= HEURISTICA_MAXIMA / 2) 
-            return HEURISTICA_MAXIMA;
-        if (res <= -HEURISTICA_MAXIMA / 2) 
-            return -HEURISTICA_MAXIMA;
-
-        return res;
+    /**
+     * @return Temps de CPU del fil actual en ns, o el temps real si la JVM no el mesura.
+     */
+    private static long tempsCpu() {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        return mx.isCurrentThreadCpuTimeSupported() ? mx.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+    /**
+     * Busca la posició al llibre d'obertures.
+     * @return La columna del llibre, o -1 si no hi és o no hi ha llibre.
+     */
+    private int consultaLlibre(Posicio t) {
+        if (llibre == null) {
+            return -1;
+        }
+        long inici = System.nanoTime();
+        int col = llibre.consulta(t, colorJugador);
+        if (col < 0 || !t.movpossible(col)) {
+            return -1;
+        }
+        estadistiques.reinicia();
+        estadistiques.delLlibre = true;
+        estadistiques.columna = col;
+        estadistiques.variacioPrincipal[0] = col;
+        estadistiques.longitudVariacio = 1;
+        estadistiques.nanosegons = System.nanoTime() - inici;
+        return col;
     }
 
-
-    private int avaluarColumna(Tauler t, int col) {
-        Integer first = 0, cont = 0, cont_buides = 0;
-
-        return eC(t, col, first, cont, cont_buides);
+    /**
+     * Resol la posició fins al final amb el solucionador exacte.
+     * @return La millor columna.
+     */
+    private int resolFinal(Posicio t) {
+        long inici = System.nanoTime();
+        estadistiques.reinicia();
+        int col = solucionador.resol(t, colorJugador);
+        int buides = t.casellesBuides();
+        estadistiques.resolta = true;
+        estadistiques.valor = solucionador.getValor();
+        estadistiques.jugadesFinsAlFinal = SolucionadorFinal.jugadesFinsAlFinal(solucionador.getValor(), buides);
+        estadistiques.profunditatAssolida = buides;
+        estadistiques.nodes = solucionador.getNodes();
+        estadistiques.columna = col;
+        estadistiques.variacioPrincipal[0] = col;
+        estadistiques.longitudVariacio = 1;
+        estadistiques.nanosegons = System.nanoTime() - inici;
+        return col;
     }
 
     /**
-     * Ajuda en l'avaluació de la columna donada.
-     * @param t Tauler de joc.
-     * @param col Número de la columna a avaluar.
-     * @param first Primera fitxa trobada a la columna.
-     * @param cont Comptador de fitxes consecutives.
-     * @param cont_buides Comptador d'espais buits.
-     * @return Puntuació calculada per la columna.
+     * Implementa l'algorisme Minimax amb poda Alpha-Beta. Si el jugador té
+     * temps limitat, aprofundeix iterativament fins que s'acaba el temps.
+     * @param t El tauler actual del joc.
+     * @param profunditat La profunditat actual de recerca.
+     * @return La millor columna per a moure's segons l'algorisme.
      */
-    private int eC(Tauler t, int col, Integer first, Integer cont, Integer cont_buides) {
-        for (int i = t.getMida() - 1; i >= 0; --i) {
-            int fitxa = t.getColor(i, col);
-            if (fitxa == 0) {
-                cont_buides++;
-                continue;
-            }
+    private int calcularMinimax(Posicio t, int profunditat) {
+        long inici = System.nanoTime();
+        if (taula != null && taulaPropia) {
+            taula.novaCerca(); // Una taula que ve de fora la renova qui la comparteix
+        }
+        estadistiques.reinicia();
+        jugadesExplorades = 0;
+        nodesVisitats = 0;
+        talls = 0;
+        tallsPrimer = 0;
+        recerques = 0;
+        consultesTaula = 0;
+        encertsTaula = 0;
+        if (ordenacio != null) {
+            ordenacio.novaCerca();
+        }
+        buidesArrel = t.casellesBuides();
+        avaluador.inicia(t, colorJugador);
+        aturada = false;
+        aturable = false;
+        columnaProgres = -1;
+        profunditatProgres = 0;
+        limitCerca = 0;
+        iniciCerca = inici;
+        properProgres = inici + NANOS_ENTRE_PROGRESSOS;
 
-            if (first == 0) {
-                first = fitxa;
+        int millor;
+        if (tempsMaxim <= 0) {
+            aturable = true; // Cada columna de l'arrel ja cercada és una resposta
+            millor = cercaArrel(t, profunditat);
+            registraIteracio(profunditat, millor);
+        } else {
+            millor = cercaArrel(t, 1); // La primera iteració sempre s'acaba
+            registraIteracio(1, millor);
+            aturable = true;
+            if (tempsMaxim > 0) {
+                limitCerca = inici + tempsMaxim * 1000000L;
             }
-
-            if (first == fitxa) {
-                cont += fitxa;
-                if (bingo(cont)) {
-                    return colorJugador * first * HEURISTICA_MAXIMA;
-                }
-            } else {
-                break;
+            int maxima = Math.min(profunditat, t.casellesBuides());
+            for (int p = 2; p <= maxima && !partidaDecidida(valorArrel); p++) {
+                int col = cercaAmbAspiracio(t, p);
+                if (aturada) break; // Iteració a mitges: ens quedem amb l'anterior
+                millor = col;
+                registraIteracio(p, millor);
             }
         }
 
-        return calcH(first, cont, cont_buides);
+        estadistiques.nodes = nodesVisitats;
+        estadistiques.fullesAvaluades = jugadesExplorades;
+        estadistiques.talls = talls;
+        estadistiques.tallsPrimerMoviment = tallsPrimer;
+        estadistiques.recerques = recerques;
+        estadistiques.consultesTaula = consultesTaula;
+        estadistiques.encertsTaula = encertsTaula;
+        estadistiques.nanosegons = System.nanoTime() - inici;
+        return millor;
     }
 
-    private boolean bingo(Integer cont) {
-        return cont > 3 || cont < -3;
+    /**
+     * Guarda a les estadístiques el resultat d'una iteració completada.
+     */
+    private void registraIteracio(int profunditat, int columna) {
+        estadistiques.profunditatAssolida = profunditat;
+        estadistiques.columna = columna;
+        estadistiques.valor = valorArrel;
+        estadistiques.longitudVariacio = longitudVariacio[0];
+        System.arraycopy(variacio[0], 0, estadistiques.variacioPrincipal, 0, longitudVariacio[0]);
+        columnaProgres = columna;
+        profunditatProgres = profunditat;
+        if (receptorProgres != null) {
+            informaProgres(System.nanoTime());
+        }
     }
 
-    private int calcH(Integer first, Integer cont, Integer cont_buides) {
-        if (cont == 0 || cont_buides + first * cont < 4)
-            return 0;
-
-        return (int) (colorJugador * first * (Math.pow(10.0, first * (cont - first))));
+    /**
+     * Informa el receptor de progrés de la millor columna trobada fins ara i
+     * dels nodes visitats.
+     */
+    private void informaProgres(long ara) {
+        properProgres = ara + NANOS_ENTRE_PROGRESSOS;
+        double segons = (ara - iniciCerca) / 1e9;
+        receptorProgres.progres(columnaProgres, profunditatProgres,
+                nodesVisitats, (segons > 0) ? nodesVisitats / segons : 0);
     }
 
     /**
-     * Avalua les files del tauler.
-     * @param t Tauler de joc.
-     * @param fil Número de la fila a avaluar.
-     * @return Puntuació heurística de la fila.
+     * Anota que la columna col és la millor trobada fins ara al node actual i
+     * hi enganxa la variació principal del fill.
      */
-    private int avaluarFila(Tauler t, int fil) {
-        int cont_buides = 0, cont = 0, color_actual = 0, res = 0, color_aux = 0;
+    private void actualitzaVariacio(Posicio t, int col) {
+        int ply = buidesArrel - t.casellesBuides();
+        int[] fila = variacio[ply];
+        int[] filaFill = variacio[ply + 1];
+        fila[ply] = col;
+        int longitud = Math.max(longitudVariacio[ply + 1], ply + 1);
+        for (int j = ply + 1; j < longitud; j++) {
+            fila[j] = filaFill[j];
+        }
+        longitudVariacio[ply] = longitud;
+    }
 
-        return mirarFila(t, fil, cont_buides, cont, color_actual, res, color_aux);
+    /**
+     * Posa una fitxa i actualitza l'heurística incremental.
+     */
+    private void mou(Posicio t, int col, int color) {
+        t.afegeix(col, color);
+        avaluador.afegeix(t, col);
     }
 
     /**
-     * Processa la fila donada per determinar la seva puntuació.
-     * @param t Tauler de joc.
-     * @param fil Número de la fila a processar.
-     * @param cont_buides Comptador d'espais buits.
-     * @param cont Comptador de fitxes consecutives.
-     * @param color_actual Color de la fitxa actual.
-     * @param res Puntuació acumulada.
-     * @param color_aux Color auxiliar per a l'avaluació.
-     * @return Puntuació calculada per la fila.
+     * Desfà un moviment fet amb mou.
      */
-    private int mirarFila(Tauler t, int fil, int cont_buides, int cont, int color_actual, int res, int color_aux) {
-        for (int i = t.getMida() - 1; i >= 0; --i) {
-            int fitxa = t.getColor(fil, i);
-            if (fitxa == 0) {
-                res = estabuit(res, cont, cont_buides, color_actual, color_aux);
-                cont_buides++;
-                color_aux = (color_actual != 0) ? color_actual : color_aux;
-                color_actual = 0;
-            } else {
-                res = noestabuit(t, fil, i, res, cont, cont_buides, color_actual, color_aux, fitxa);
-                if (res == colorJugador * color_actual * HEURISTICA_MAXIMA) {
-                    return res;
-                }
-                color_actual = (color_actual == 0) ? fitxa : color_actual * -1;
-                cont = (fitxa == color_actual) ? ++cont : 1;
-                cont_buides = 0;
-            }
+    private void desfes(Posicio t, int col) {
+        t.treu(col);
+        avaluador.treu();
+    }
 
-            if (i == 0 && cont + cont_buides > 3) {
-                res += puntuacioH(colorJugador, color_actual, cont - 1);
-            }
-        }
-        return res;
+    /**
+     * Comença un node: el compta i buida la seva variació principal.
+     */
+    private void entraNode(Posicio t) {
+        ++nodesVisitats;
+        int ply = buidesArrel - t.casellesBuides();
+        longitudVariacio[ply] = ply;
     }
 
-    private int estabuit(int res, int cont, int cont_buides, int color_actual, int color_aux) {
-        if (cont + cont_buides > 3) {
-            res += puntuacioH(colorJugador, (color_actual != 0) ? color_actual : color_aux, cont - 1);
-        }
-        return res;
+    private int cercaArrel(Posicio t, int profunditat) {
+        return cercaArrel(t, profunditat, -HEURISTICA_MAXIMA, HEURISTICA_MAXIMA);
     }
 
-    private int noestabuit(Tauler t, int fil, int i, int res, int cont, int cont_buides, int color_actual, int color_aux, int fitxa) {
-        if (fitxa == color_actual) {
-            cont++;
-            if (cont > 3) {
-                return colorJugador * color_actual * HEURISTICA_MAXIMA;
+    private int cercaArrel(Posicio t, int profunditat, int alfa, int beta) {
+        longitudVariacio[0] = 0;
+        permesesArrel = -1L;
+        plyMaxim = 2 * profunditat;
+        if (podaAmenaces) {
+            long guanyadores = t.amenaces(colorJugador) & t.jugables();
+            if (guanyadores != 0) {
+                int col = Long.numberOfTrailingZeros(guanyadores) / Posicio.MIDA;
+                valorArrel = HEURISTICA_MAXIMA;
+                variacio[0][0] = col;
+                longitudVariacio[0] = 1;
+                return col;
             }
-        } else {
-            res = estabuit(res, cont, cont_buides, color_actual, color_aux);
+            long segures = t.jugadesSegures(colorJugador);
+            if (segures != 0) {
+                permesesArrel = segures; // Si totes perden, es cerquen totes
+            }
+        }
+        if (executor != null) {
+            return mirarColumnesEnParalel(t, profunditat);
         }
-        return res;
+        int col = 0;
+        int valor = -HEURISTICA_MAXIMA - 1;
+
+        return mirarColumnes(t, profunditat, col, valor, alfa, beta);
     }
 
-    private int puntuacioH(int colorJugador, int color, int exponent) {
-        return (int) (colorJugador * color * Math.pow(10.0, exponent));
+    /**
+     * Cerca una iteració de l'aprofundiment amb una finestra d'aspiració
+     * centrada en el valor de la iteració anterior. Si el valor queda fora de
+     * la finestra només és una cota, i es torna a cercar amb la finestra sencera.
+     * @return La millor columna.
+     */
+    private int cercaAmbAspiracio(Posicio t, int profunditat) {
+        if (!aspiracio || executor != null) {
+            return cercaArrel(t, profunditat);
+        }
+        int alfa = (int) Math.max(-HEURISTICA_MAXIMA, (long) valorArrel - FINESTRA_ASPIRACIO);
+        int beta = (int) Math.min(HEURISTICA_MAXIMA, (long) valorArrel + FINESTRA_ASPIRACIO);
+        int col = cercaArrel(t, profunditat, alfa, beta);
+        if (!aturada && (valorArrel <= alfa || valorArrel >= beta)) {
+            ++recerques;
+            col = cercaArrel(t, profunditat);
+        }
+        return col;
     }
 
     /**
-     * Avalua les diagonals del tauler per a determinar la millor jugada.
-     * Aquest mètode examina tant les diagonals ascendents com les descendents
-     * i calcula la puntuació basant-se en les oportunitats de connexió.
-     *
-     * @param t El tauler de joc.
-     * @return La puntuació heurística de les diagonals del tauler.
-     */
-    private int avaluarDiagonals(Tauler t) {
-        int res = 0;
-        // Evaluate descending diagonals
-        for (int col = t.getMida() - 4, fil = 0; fil < t.getMida() - 2; ) {
-            res += eD(t, col, fil, true);
-            if (col > 0) {
-                col--;
-            } else {
-                fil++;
+     * Reparteix les columnes de l'arrel entre tasques de l'executor. Cada tasca
+     * cerca una columna amb el seu propi cercador i la millor cota coneguda.
+     * Els valors de les columnes són exactes dins la finestra, i en cas d'empat
+     * guanya la columna més baixa, igual que a mirarColumnes.
+     * @param t El tauler actual.
+     * @param profunditat Profunditat de recerca.
+     * @return La millor columna per realitzar un moviment.
+     */
+    private int mirarColumnesEnParalel(Posicio t, int profunditat) {
+        if (treballadors == null) {
+            treballadors = new MinimaxPlayer[t.getMida()];
+        }
+        final MillorArrel millor = new MillorArrel();
+        List<Future<?>> tasques = new ArrayList<>();
+        for (int i = 0; i < t.getMida(); i++) {
+            if (!t.movpossible(i)) continue;
+            if ((permesesArrel & (1L << (i * Posicio.MIDA + t.getAltura(i)))) == 0) continue;
+
+            if (treballadors[i] == null) {
+                treballadors[i] = new MinimaxPlayer(this);
+            }
+            final MinimaxPlayer fill = treballadors[i];
+            fill.colorJugador = colorJugador;
+            fill.limitCerca = limitCerca;
+            fill.aturable = aturable;
+            fill.aturaAra = aturaAra;
+            fill.aturada = false;
+            fill.jugadesExplorades = 0;
+            fill.nodesVisitats = 0;
+            fill.talls = 0;
+            fill.tallsPrimer = 0;
+            fill.recerques = 0;
+            fill.consultesTaula = 0;
+            fill.encertsTaula = 0;
+            if (fill.ordenacio != null) {
+                fill.ordenacio.novaCerca();
             }
+            fill.buidesArrel = t.casellesBuides();
+            fill.plyMaxim = plyMaxim;
+            final Posicio p = new Posicio(t);
+            final int col = i;
+            tasques.add(executor.submit(() -> {
+                fill.avaluador.inicia(p, colorJugador);
+                fill.mou(p, col, colorJugador);
+                int min = (int) fill.valorFill(p, col, millor.alfaPer(col), HEURISTICA_MAXIMA, profunditat - 1, colorJugador);
+                if (!fill.aturada) {
+                    millor.proposa(col, min);
+                }
+            }));
         }
-        // Evaluate ascending diagonals
-        for (int col = 3, fil = 0; fil < t.getMida() - 2; ) {
-            res += eD(t, col, fil, false);
-            if (col < t.getMida() - 1) {
-                col++;
-            } else {
-                fil++;
+
+        for (Future<?> tasca : tasques) {
+            try {
+                tasca.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                aturada = true;
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Error a la cerca paral·lela", ex.getCause());
             }
         }
-        return res;
+        for (MinimaxPlayer fill : treballadors) {
+            if (fill == null) continue;
+            jugadesExplorades += fill.jugadesExplorades;
+            nodesVisitats += fill.nodesVisitats;
+            talls += fill.talls;
+            tallsPrimer += fill.tallsPrimer;
+            recerques += fill.recerques;
+            consultesTaula += fill.consultesTaula;
+            encertsTaula += fill.encertsTaula;
+            aturada |= fill.aturada;
+            fill.aturada = false;
+            fill.jugadesExplorades = 0;
+            fill.nodesVisitats = 0;
+            fill.talls = 0;
+            fill.tallsPrimer = 0;
+        }
+        if (!millor.trobada) {
+            // Aturada abans que cap columna acabés: la primera de l'ordre
+            millor.columna = primeraEnOrdre(t);
+        }
+        valorArrel = millor.valor;
+        if (millor.trobada) {
+            MinimaxPlayer guanyador = treballadors[millor.columna];
+            int longitud = Math.max(guanyador.longitudVariacio[1], 1);
+            variacio[0][0] = millor.columna;
+            System.arraycopy(guanyador.variacio[1], 1, variacio[0], 1, longitud - 1);
+            longitudVariacio[0] = longitud;
+        }
+        return millor.columna;
     }
 
     /**
-     * Ajuda en l'avaluació de la diagonal específica del tauler.
-     * Calcula la puntuació heurística basada en les seqüències de fitxes
-     * i els espais buits en una diagonal específica.
-     *
-     * @param t El tauler de joc.
-     * @param col La columna inicial de la diagonal a avaluar.
-     * @param fil La fila inicial de la diagonal a avaluar.
-     * @param isDescending Cert si la diagonal és descendent, fals si és ascendent.
-     * @return La puntuació heurística de la diagonal específica.
-     */
-    private int eD(Tauler t, int col, int fil, boolean isDescending) {
-        int cont_buides = 0, cont = 0, color_actual = 0, res = 0;
-        for (int i = 0; (isDescending ? i + col < t.getMida() : col - i >= 0) && i + fil < t.getMida(); i++) {
-            int fitxa = t.getColor(fil + i, isDescending ? col + i : col - i);
-            if (fitxa == 0) {
-                cont_buides++;
-                if (color_actual != 0 && cont + cont_buides > 3) {
-                    res += calcH(colorJugador, color_actual, cont);
-                }
-                color_actual = 0;
-            } else {
-                if (fitxa == color_actual) {
-                    cont++;
-                    if (cont > 3) {
-                        return colorJugador * color_actual * HEURISTICA_MAXIMA;
-                    }
-                } else {
-                    if (color_actual != 0 && cont + cont_buides > 3) {
-                        res += calcH(colorJugador, color_actual, cont);
-                    }
-                    color_actual = fitxa;
-                    cont = 1;
-                    cont_buides = 0;
+     * @return La primera columna de l'arrel segons l'ordenació, d'entre les
+     *         que permeten les amenaces.
+     */
+    private int primeraEnOrdre(Posicio t) {
+        int[] ordre = ordres[0];
+        int n = ordena(t, 0, colorJugador, estadistiques.columna, ordre);
+        if (permesesArrel != -1L) {
+            n = filtra(t, ordre, n, permesesArrel);
+        }
+        return (n > 0) ? ordre[0] : 0;
+    }
+
+    private boolean partidaDecidida(int valor) {
+        return valor >= HEURISTICA_MAXIMA || valor <= -HEURISTICA_MAXIMA;
+    }
+
+    /**
+     * Mira el rellotge cada NODES_ENTRE_CONSULTES nodes i marca la cerca com a
+     * aturada si s'ha passat el límit de temps, si s'ha cancel·lat la
+     * ponderació o si s'ha demanat aturar-la. Si no, i toca, informa del progrés.
+     * @return Cert si la cerca s'ha d'abandonar.
+     */
+    private boolean tempsEsgotat() {
+        if (!aturada && (++nodesRellotge & (NODES_ENTRE_CONSULTES - 1)) == 0) {
+            if (cancelada || (aturable && aturaAra) || (limitCerca != 0 && System.nanoTime() > limitCerca)) {
+                aturada = true;
+            } else if (receptorProgres != null) {
+                long ara = System.nanoTime();
+                if (ara >= properProgres) {
+                    informaProgres(ara);
                 }
             }
         }
-        if (color_actual != 0 && cont + cont_buides > 3) {
-            res += calcH(colorJugador, color_actual, cont);
+        return aturada;
+    }
+    /**
+     * Explora totes les columnes del tauler per trobar el millor moviment següent.
+     * @param t El tauler actual.
+     * @param profunditat Profunditat actual de recerca.
+     * @param col Columna actual a explorar.
+     * @param valor Millor valor trobat fins ara.
+     * @param alfa Millor valor que el maximizador pot garantir.
+     * @param beta Millor valor que el minimizador pot garantir.
+     * @return La millor columna per realitzar un moviment.
+     */
+    private int mirarColumnes(Posicio t, int profunditat, int col, int valor, int alfa, int beta) {
+        // A l'arrel es prova primer la millor columna de la iteració anterior
+        int[] ordre = ordres[0];
+        int n = ordena(t, 0, colorJugador, estadistiques.columna, ordre);
+        if (permesesArrel != -1L) {
+            n = filtra(t, ordre, n, permesesArrel);
         }
-        return res;
+        for (int j = 0; j < n; j++) {
+            int i = ordre[j];
+            // Les columnes més baixes que la millor guanyen els empats: es
+            // cerquen amb una finestra una unitat més àmplia per detectar-los
+            int a = (i < col && alfa > -HEURISTICA_MAXIMA) ? alfa - 1 : alfa;
+
+            mou(t, i, colorJugador);
+            int min = (int) estrategia.cercaFill(this, t, i, a, beta, profunditat - 1, colorJugador, j);
+            desfes(t, i);
+            if (aturada) {
+                // La columna no s'ha acabat de cercar: ens quedem amb la millor
+                // de les anteriors o, si no n'hi ha, amb la primera de l'ordre
+                if (j == 0) col = i;
+                break;
+            }
+            if (valor < min || (valor == min && i < col)) {
+                col = i;
+                valor = min;
+                actualitzaVariacio(t, i);
+                if (tempsMaxim <= 0) {
+                    columnaProgres = i;
+                    profunditatProgres = profunditat;
+                }
+            }
+            if (beta < valor) {
+                ++talls;
+                if (j == 0) ++tallsPrimer;
+                break;
+            }
+            alfa = Math.max(valor, alfa);
+        }
+        valorArrel = valor;
+        return col;
     }
 
-    private int calcH(int colorJugador, int color_actual, int cont) {
-        return (int) (colorJugador * color_actual * Math.pow(10.0, cont - 1));
+    /**
+     * Avalua l'estat actual del tauler de joc.
+     * @param t El tauler de joc actual.
+     * @return Puntuació heurística de l'estat actual del tauler.
+     */
+    private int avaluarTauler(Posicio t) {
+        ++jugadesExplorades;
+        return avaluador.avalua(t);
     }
 
     /**
-     * Determina el valor màxim que el jugador pot aconseguir en el tauler donat,
-     * considerant els moviments futurs de l'oponent.
-     * Utilitza l'algorisme Minimax amb poda Alpha-Beta.
+     * Determina el valor d'un node per al color que hi mou (negamax): el de
+     * l'heurística si mou el jugador i el contrari si mou el rival. Com fa
+     * l'estratègia, amb quines finestres i fins a quin punt es cerquen els
+     * fills, ho decideix estrategia.
      *
      * @param t El tauler de joc.
-     * @param col La columna de l'últim moviment.
-     * @param alfa El millor valor que el maximizador pot garantir fins ara.
-     * @param beta El millor valor que el minimizador pot garantir fins ara.
+     * @param col La columna de l'últim moviment, fet pel rival del color que mou.
+     * @param alfa El millor valor que el color que mou pot garantir fins ara.
+     * @param beta El millor valor que el rival li deixa aconseguir fins ara.
      * @param profunditat La profunditat actual de recerca en l'arbre de joc.
-     * @return El valor màxim que el jugador pot garantir amb el millor moviment.
+     * @param color El color que mou.
+     * @return El valor del node per al color que mou.
      */
-    private int valorMaxim(Tauler t, int col, int alfa, int beta, int profunditat) {
-        if (t.solucio(col, -colorJugador)) {
+    private long valorNode(Posicio t, int col, long alfa, long beta, int profunditat, int color) {
+        entraNode(t);
+        if (t.solucio(col, -color)) {
             return -HEURISTICA_MAXIMA;
         }
+        if (tempsEsgotat()) {
+            return 0;
+        }
+        boolean jugador = mouJugador(color);
+        if (profunditat <= 0) {
+            int h = avaluarTauler(t);
+            return jugador ? h : -(long) h;
+        }
+        if (taula == null) {
+            return expandeix(t, alfa, beta, profunditat, color, -1);
+        }
 
-        return profunditat > 0 ? maxV(t, alfa, beta, profunditat) : avaluarTauler(t);
+        // La taula guarda els valors i les cotes des del punt de vista del jugador
+        long alfaJugador = jugador ? alfa : -beta;
+        long betaJugador = jugador ? beta : -alfa;
+        long clau = clau(t);
+        long entrada = taula.consulta(clau);
+        ++consultesTaula;
+        if (entrada != 0) {
+            ++encertsTaula;
+            if (tallaAmbEntrada(entrada, alfaJugador, betaJugador, profunditat)) {
+                long v = TaulaTransposicio.valor(entrada);
+                return jugador ? v : -v;
+            }
+        }
+        int primer = (entrada != 0) ? orienta(t, TaulaTransposicio.millorMoviment(entrada)) : -1;
+        long valor = expandeix(t, alfa, beta, profunditat, color, primer);
+        if (aturada) {
+            return valor; // Valor a mitges: no es guarda
+        }
+        long valorJugador = jugador ? valor : -valor;
+        taula.guarda(clau, (int) valorJugador, profunditat,
+                tipusCota(valorJugador, alfaJugador, betaJugador), orienta(t, millorMoviment));
+        return valor;
     }
 
     /**
-     * Ajuda en el càlcul del valor màxim en una profunditat específica de l'arbre de joc.
-     * Utilitza recursivitat per explorar els moviments futurs i aplica la poda Alpha-Beta.
+     * Prova els fills d'un node en l'ordre de l'ordenació de moviments.
+     * Es comença des d'una unitat per sota de la pitjor puntuació quan mou el
+     * jugador i una per sobre de la millor quan mou el rival, com feia la
+     * parella valorMaxim/valorMinim, perquè els empats es resolguin igual.
      *
      * @param t El tauler de joc.
-     * @param alfa El millor valor que el maximizador pot garantir fins ara.
-     * @param beta El millor valor que el minimizador pot garantir fins ara.
+     * @param alfa El millor valor que el color que mou pot garantir fins ara.
+     * @param beta El millor valor que el rival li deixa aconseguir fins ara.
      * @param profunditat La profunditat actual de recerca en l'arbre de joc.
-     * @return El valor màxim possible en aquesta profunditat.
+     * @param color El color que mou.
+     * @param primer Columna a provar abans que les altres, o -1.
+     * @return El millor valor per al color que mou.
      */
-    private int maxV(Tauler t, int alfa, int beta, int profunditat) {
-        Integer valor = -HEURISTICA_MAXIMA - 1;
-        for (int i = 0; i < t.getMida(); ++i) {
-            if (!t.movpossible(i)) continue;
+    private long expandeix(Posicio t, long alfa, long beta, int profunditat, int color, int primer) {
+        boolean jugador = mouJugador(color);
+        long valor = jugador ? -HEURISTICA_MAXIMA - 1L : -(HEURISTICA_MAXIMA - 1L);
+        int millor = -1;
+        int ply = buidesArrel - t.casellesBuides();
+        int[] ordre = ordres[ply];
+        long permeses = -1L;
+        if (podaAmenaces) {
+            long jugables = t.jugables();
+            long guanyadores = t.amenaces(color) & jugables;
+            if (guanyadores != 0) {
+                millorMoviment = Long.numberOfTrailingZeros(guanyadores) / Posicio.MIDA;
+                return HEURISTICA_MAXIMA;
+            }
+            permeses = t.jugadesSegures(color);
+            if (permeses == 0 && jugables != 0) {
+                millorMoviment = -1;
+                return -HEURISTICA_MAXIMA; // Qualsevol jugada deixa guanyar el rival
+            }
+        }
+        int n = ordena(t, ply, color, primer, ordre);
+        if (n == 0) {
+            millorMoviment = -1;
+            return 0; // Tauler ple: taules
+        }
+        if (permeses != -1L) {
+            n = filtra(t, ordre, n, permeses);
+        }
+        boolean selectiva = reduccions || extensions;
+        long amenacesRival = selectiva ? t.amenaces(-color) & t.jugables() : 0;
+        for (int j = 0; j < n; j++) {
+            int i = ordre[j];
 
-            Tauler aux = new Tauler(t);
-            aux.afegeix(i, colorJugador);
-            valor = Math.max(valor, valorMinim(aux, i, alfa, beta, profunditat - 1));
+            long casella = 1L << (i * Posicio.MIDA + t.getAltura(i));
+            mou(t, i, color);
+            long v;
+            if (selectiva) {
+                // Només s'estén la resposta: l'amenaça obliga el rival a tapar-la
+                // al node següent, i estendre totes dues jugades dispara la cerca
+                boolean tapa = (amenacesRival & casella) != 0;
+                boolean forcada = tapa || (t.amenaces(color) & t.jugables()) != 0;
+                int prof = (extensions && tapa && ply < plyMaxim) ? profunditat : profunditat - 1;
+                if (reduccions && !forcada && j >= JUGADES_SENSE_REDUCCIO && profunditat >= PROFUNDITAT_MINIMA_REDUCCIO) {
+                    v = estrategia.cercaFill(this, t, i, alfa, beta, prof - 1, color, j);
+                    if (v > alfa && !aturada) {
+                        ++recerques;
+                        v = estrategia.cercaFill(this, t, i, alfa, beta, prof, color, j);
+                    }
+                } else {
+                    v = estrategia.cercaFill(this, t, i, alfa, beta, prof, color, j);
+                }
+            } else {
+                v = estrategia.cercaFill(this, t, i, alfa, beta, profunditat - 1, color, j);
+            }
+            desfes(t, i);
+            if (v > valor) {
+                valor = v;
+                millor = i;
+                actualitzaVariacio(t, i);
+            }
 
-            if (beta <= valor) {
+            if (estrategia.talla(valor, beta, jugador)) {
+                registraTall(t, ply, color, i, profunditat, j);
                 break;
             }
             alfa = Math.max(alfa, valor);
         }
+        millorMoviment = millor;
         return valor;
     }
 
     /**
-     * Determina el valor mínim que l'oponent pot forçar en el tauler donat,
-     * considerant els moviments futurs del jugador.
-     * Utilitza l'algorisme Minimax amb poda Alpha-Beta.
-     *
-     * @param t El tauler de joc.
-     * @param col La columna de l'últim moviment.
-     * @param alfa El millor valor que el maximizador pot garantir fins ara.
-     * @param beta El millor valor que el minimizador pot garantir fins ara.
-     * @param profunditat La profunditat actual de recerca en l'arbre de joc.
-     * @return El valor mínim que l'oponent pot garantir amb el millor moviment.
+     * Cerca el fill d'un node on el color indicat acaba de jugar col. Les
+     * estratègies de cerca el fan servir per cercar cada fill.
+     * @return El valor del fill des del punt de vista del color que ha jugat.
      */
-    private int valorMinim(Tauler t, int col, int alfa, int beta, int profunditat) {
-        if (t.solucio(col, colorJugador)) {
-            return HEURISTICA_MAXIMA;
-        }
+    long valorFill(Posicio t, int col, long alfa, long beta, int profunditat, int color) {
+        return -valorNode(t, col, -beta, -alfa, profunditat, -color);
+    }
 
-        return profunditat > 0 ? eProf(t, alfa, beta, profunditat) : avaluarTauler(t);
+    /**
+     * @return Cert si el color és el del jugador que cerca.
+     */
+    boolean mouJugador(int color) {
+        return color == colorJugador;
     }
 
     /**
-     * Ajuda en el càlcul del valor mínim en una profunditat específica de l'arbre de joc.
-     * Utilitza recursivitat per explorar els moviments futurs i aplica la poda Alpha-Beta.
-     *
-     * @param t El tauler de joc.
-     * @param alfa El millor valor que el maximizador pot garantir fins ara.
-     * @param beta El millor valor que el minimizador pot garantir fins ara.
-     * @param profunditat La profunditat actual de recerca en l'arbre de joc.
-     * @return El valor mínim possible en aquesta profunditat.
+     * @return Cert si s'ha esgotat el temps i la iteració en curs no val.
      */
-    private int eProf(Tauler t, int alfa, int beta, int profunditat) {
-        Integer valor = HEURISTICA_MAXIMA - 1;
+    boolean estaAturada() {
+        return aturada;
+    }
+
+    /**
+     * Compta una cerca repetida per l'estratègia.
+     */
+    void comptaRecerca() {
+        ++recerques;
+    }
+
+    /**
+     * Omple ordre amb les columnes jugables en l'ordre en què s'han de provar.
+     * Sense ordenació de moviments, primer la columna suggerida i després la
+     * resta d'esquerra a dreta.
+     * @return El nombre de columnes jugables.
+     */
+    private int ordena(Posicio t, int ply, int color, int primer, int[] ordre) {
+        if (ordenacio != null) {
+            return ordenacio.ordena(t, ply, color, primer, ordre);
+        }
+        int n = 0;
+        if (primer >= 0 && primer < t.getMida() && t.movpossible(primer)) {
+            ordre[n++] = primer;
+        }
         for (int i = 0; i < t.getMida(); i++) {
-            if (!t.movpossible(i)) continue;
+            if (i != primer && t.movpossible(i)) {
+                ordre[n++] = i;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Deixa a ordre, en el mateix ordre, només les columnes on la casella
+     * jugable és a permeses.
+     * @return El nombre de columnes que queden.
+     */
+    private static int filtra(Posicio t, int[] ordre, int n, long permeses) {
+        int m = 0;
+        for (int j = 0; j < n; j++) {
+            int col = ordre[j];
+            if ((permeses & (1L << (col * Posicio.MIDA + t.getAltura(col)))) != 0) {
+                ordre[m++] = col;
+            }
+        }
+        return m;
+    }
 
-            Tauler aux = new Tauler(t);
-            aux.afegeix(i, -colorJugador);
-            valor = Math.min(valor, valorMaxim(aux, i, alfa, beta, profunditat - 1));
+    /**
+     * Compta una poda provocada per la columna col, que era la j-èsima provada,
+     * i l'anota a l'ordenació de moviments.
+     */
+    private void registraTall(Posicio t, int ply, int color, int col, int profunditat, int j) {
+        ++talls;
+        if (j == 0) ++tallsPrimer;
+        if (ordenacio != null) {
+            ordenacio.tall(t, ply, color, col, profunditat);
+        }
+    }
 
-            if (valor < alfa) {
-                break;
+    /**
+     * Calcula la clau de la posició a la taula de transposicions. Com que
+     * l'heurística depèn del color del jugador, les posicions avaluades per
+     * cada color es guarden per separat.
+     */
+    private long clau(Posicio t) {
+        long hash = simetria ? t.getClauCanonica() : t.getHash();
+        return (colorJugador == 1) ? hash : hash ^ CLAU_BLAVES;
+    }
+
+    /**
+     * Passa el millor moviment d'una entrada de la taula entre l'orientació
+     * de la posició i la de la posició canònica.
+     */
+    private int orienta(Posicio t, int col) {
+        return simetria ? t.orientaColumna(col) : col;
+    }
+
+    /**
+     * Mira si una entrada de la taula permet retornar el seu valor sense expandir el node.
+     */
+    private boolean tallaAmbEntrada(long entrada, long alfa, long beta, int profunditat) {
+        if (TaulaTransposicio.profunditat(entrada) < profunditat) return false;
+
+        int valor = TaulaTransposicio.valor(entrada);
+        switch (TaulaTransposicio.tipus(entrada)) {
+            case TaulaTransposicio.EXACTE:
+                return true;
+            case TaulaTransposicio.COTA_INFERIOR:
+                return valor >= beta;
+            default:
+                return valor <= alfa;
+        }
+    }
+
+    /**
+     * Classifica el valor d'un node segons la finestra alfa-beta amb què s'ha cercat.
+     * La poda pot deixar finestres buides (alfa == beta); en aquest cas un valor
+     * igual a beta ve d'un tall i per tant és una cota inferior.
+     */
+    private int tipusCota(long valor, long alfa, long beta) {
+        if (valor >= beta) return TaulaTransposicio.COTA_INFERIOR;
+        if (valor <= alfa) return TaulaTransposicio.COTA_SUPERIOR;
+        return TaulaTransposicio.EXACTE;
+    }
+
+    /**
+     * Millor columna de l'arrel trobada fins ara per les tasques de la cerca
+     * paral·lela. Fa de cota alfa compartida entre els cercadors.
+     */
+    private static class MillorArrel {
+        int columna = 0;
+        int valor = Integer.MIN_VALUE;
+        boolean trobada = false;
+
+        /**
+         * Retorna la cota alfa amb què cal cercar una columna. Les columnes més
+         * baixes que la millor guanyen els empats, així que es cerquen amb una
+         * finestra una unitat més àmplia per poder-los detectar.
+         */
+        synchronized int alfaPer(int col) {
+            if (!trobada) return -Integer.MAX_VALUE;
+            if (col < columna && valor > Integer.MIN_VALUE) return valor - 1;
+            return valor;
+        }
+
+        synchronized void proposa(int col, int v) {
+            if (!trobada || v > valor || (v == valor && col < columna)) {
+                columna = col;
+                valor = v;
+                trobada = true;
             }
-            beta = Math.min(valor, beta);
         }
-        return valor;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,129 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.util.Arrays;
+
+/**
+ * Ordenació dels moviments de la cerca per podar abans.
+ *
+ * Cada node prova primer el moviment suggerit per la taula de transposicions,
+ * després els moviments assassins del seu ply (els que hi han provocat una
+ * poda fa poc) i finalment la resta de columnes ordenades per la taula
+ * d'història. Entre columnes amb la mateixa història van primer les
+ * centrals, que solen ser les millors.
+ *
+ * La història es guarda per color i per casella d'arribada de la fitxa
+ * (columna i alçada), i suma profunditat^2 a cada poda.
+ */
+public class OrdenacioMoviments {
+    private static final int MIDA = Posicio.MIDA;
+    private static final int[] CENTRE = {3, 4, 2, 5, 1, 6, 0, 7}; // Columnes de dins cap a fora
+    private static final int MAX_PLY = MIDA * MIDA + 1;
+    private static final int LIMIT_HISTORIA = 1 << 24; // Quan s'hi arriba, es redueix tota la taula a la meitat
+
+    private final int[][] assassins = new int[MAX_PLY][2];
+    private final int[][] historia = new int[2][MIDA * MIDA];
+
+    /**
+     * Crea una ordenació sense informació prèvia.
+     */
+    public OrdenacioMoviments() {
+        for (int[] a : assassins) {
+            Arrays.fill(a, -1);
+        }
+    }
+
+    /**
+     * Prepara una cerca nova: oblida els assassins, que depenen de la posició
+     * de l'arrel, i redueix la història perquè pesi més la cerca actual.
+     */
+    public void novaCerca() {
+        for (int[] a : assassins) {
+            Arrays.fill(a, -1);
+        }
+        redueixHistoria();
+    }
+
+    /**
+     * Omple desti amb les columnes jugables en l'ordre en què s'han de provar.
+     * @param t La posició.
+     * @param ply Distància a l'arrel de la cerca.
+     * @param color Color que mou.
+     * @param primer Moviment de la taula de transposicions, o -1.
+     * @param desti On es deixen les columnes; com a mínim MIDA posicions.
+     * @return El nombre de columnes jugables.
+     */
+    public int ordena(Posicio t, int ply, int color, int primer, int[] desti) {
+        int n = 0;
+        if (primer >= 0 && primer < MIDA && t.movpossible(primer)) {
+            desti[n++] = primer;
+        }
+        int a0 = assassins[ply][0];
+        if (a0 >= 0 && a0 != primer && t.movpossible(a0)) {
+            desti[n++] = a0;
+        }
+        int a1 = assassins[ply][1];
+        if (a1 >= 0 && a1 != primer && a1 != a0 && t.movpossible(a1)) {
+            desti[n++] = a1;
+        }
+
+        int[] h = historia[index(color)];
+        int inici = n;
+        for (int c : CENTRE) {
+            if (!t.movpossible(c) || jaHiEs(desti, n, c)) continue;
+            // Inserció estable: a igual història es manté l'ordre de CENTRE
+            int punts = h[casella(t, c)];
+            int j = n++;
+            while (j > inici && h[casella(t, desti[j - 1])] < punts) {
+                desti[j] = desti[j - 1];
+                j--;
+            }
+            desti[j] = c;
+        }
+        return n;
+    }
+
+    /**
+     * Anota que la columna col ha provocat una poda.
+     * @param t La posició abans de jugar col.
+     * @param ply Distància a l'arrel de la cerca.
+     * @param color Color que ha jugat col.
+     * @param col La columna.
+     * @param profunditat Profunditat restant del node on s'ha podat.
+     */
+    public void tall(Posicio t, int ply, int color, int col, int profunditat) {
+        int[] a = assassins[ply];
+        if (a[0] != col) {
+            a[1] = a[0];
+            a[0] = col;
+        }
+        int[] h = historia[index(color)];
+        int i = casella(t, col);
+        h[i] += profunditat * profunditat;
+        if (h[i] >= LIMIT_HISTORIA) {
+            redueixHistoria();
+        }
+    }
+
+    private void redueixHistoria() {
+        for (int[] h : historia) {
+            for (int i = 0; i < h.length; i++) {
+                h[i] >>= 1;
+            }
+        }
+    }
+
+    private static boolean jaHiEs(int[] desti, int n, int c) {
+        for (int i = 0; i < n; i++) {
+            if (desti[i] == c) return true;
+        }
+        return false;
+    }
+
+    private static int casella(Posicio t, int col) {
+        return col * MIDA + t.getAltura(col);
+    }
+
+    private static int index(int color) {
+        return (color == 1) ? 0 : 1;
+    }
+}
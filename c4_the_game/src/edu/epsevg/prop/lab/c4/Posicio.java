@@ -0,0 +1,335 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Representació del tauler de 8x8 amb bitboards, pensada per a la cerca.
+ *
+ * Cada columna ocupa 8 bits consecutius d'un long (bit = columna * 8 + fila),
+ * i cada color té el seu propi long. Els moviments es fan i es desfan sobre
+ * la mateixa instància, de manera que recórrer l'arbre de joc no reserva memòria.
+ * La posició manté també el seu hash de Zobrist, que s'actualitza a cada moviment,
+ * i el de la posició reflectida (columna c a la columna 7 - c). El tauler és
+ * simètric, així que una posició i la seva reflectida tenen el mateix valor;
+ * les taules i el llibre les guarden amb una sola clau, la canònica.
+ */
+public class Posicio {
+    public static final int MIDA = 8; // Costat del tauler
+
+    // Caselles on pot començar un 4 en ratlla en cada direcció, sense sortir del tauler
+    private static final long INICI_VERTICAL = mascaraInicis(0, 1);
+    private static final long INICI_HORITZONTAL = mascaraInicis(1, 0);
+    private static final long INICI_DIAGONAL = mascaraInicis(1, 1);
+    private static final long INICI_ANTIDIAGONAL = mascaraInicis(1, -1);
+    private static final long FILA_INFERIOR = 0x0101010101010101L; // Fila 0 de cada columna
+    private static final long FILA_SUPERIOR = FILA_INFERIOR << (MIDA - 1);
+
+    // Claus de Zobrist per casella: [0] per al color 1, [1] per al color -1
+    private static final long[][] ZOBRIST = new long[2][MIDA * MIDA];
+
+    static {
+        Random r = new Random(0x5EED_C4L); // Llavor fixa: els hash són estables entre execucions
+        for (int i = 0; i < MIDA * MIDA; i++) {
+            ZOBRIST[0][i] = r.nextLong();
+            ZOBRIST[1][i] = r.nextLong();
+        }
+    }
+
+    private long fitxesVermelles; // Fitxes del color 1
+    private long fitxesBlaves; // Fitxes del color -1
+    private final int[] altura = new int[MIDA]; // Fitxes posades a cada columna
+    private int nFitxes; // Fitxes posades en total
+    private long hash; // Hash de Zobrist de la posició
+    private long hashMirall; // Hash de Zobrist de la posició reflectida
+
+    /**
+     * Construeix la posició a partir d'un tauler del joc.
+     * @param t El tauler a convertir; ha de ser de 8x8.
+     */
+    public Posicio(Tauler t) {
+        carrega(t);
+    }
+
+    /**
+     * Constructor de còpia.
+     * @param p La posició a copiar.
+     */
+    public Posicio(Posicio p) {
+        carrega(p);
+    }
+
+    /**
+     * Substitueix el contingut de la posició pel d'un tauler del joc, sense
+     * reservar memòria, per poder reaprofitar la mateixa instància a cada moviment.
+     * @param t El tauler a convertir; ha de ser de 8x8.
+     */
+    public void carrega(Tauler t) {
+        if (t.getMida() != MIDA) {
+            throw new IllegalArgumentException("Posicio només admet taulers de " + MIDA + "x" + MIDA);
+        }
+        fitxesVermelles = 0;
+        fitxesBlaves = 0;
+        Arrays.fill(altura, 0);
+        nFitxes = 0;
+        hash = 0;
+        hashMirall = 0;
+        for (int col = 0; col < MIDA; col++) {
+            for (int fil = 0; fil < MIDA; fil++) {
+                int color = t.getColor(fil, col);
+                if (color == 0) break;
+                afegeix(col, color);
+            }
+        }
+    }
+
+    /**
+     * Copia una altra posició sense reservar memòria.
+     * @param p La posició a copiar.
+     */
+    public void carrega(Posicio p) {
+        fitxesVermelles = p.fitxesVermelles;
+        fitxesBlaves = p.fitxesBlaves;
+        System.arraycopy(p.altura, 0, altura, 0, MIDA);
+        nFitxes = p.nFitxes;
+        hash = p.hash;
+        hashMirall = p.hashMirall;
+    }
+
+    /**
+     * Retorna la mida del costat del tauler.
+     * @return Sempre 8.
+     */
+    public int getMida() {
+        return MIDA;
+    }
+
+    /**
+     * Retorna el color de la fitxa d'una casella.
+     * @param fil La fila.
+     * @param col La columna.
+     * @return El color de la fitxa, 0 si la casella és buida.
+     */
+    public int getColor(int fil, int col) {
+        long bit = 1L << (col * MIDA + fil);
+        if ((fitxesVermelles & bit) != 0) return 1;
+        if ((fitxesBlaves & bit) != 0) return -1;
+        return 0;
+    }
+
+    /**
+     * Retorna el bitboard de les fitxes d'un color (bit = columna * 8 + fila).
+     * @param color El color.
+     * @return Les caselles ocupades per aquest color.
+     */
+    public long getFitxes(int color) {
+        return (color == 1) ? fitxesVermelles : fitxesBlaves;
+    }
+
+    /**
+     * Retorna el hash de Zobrist de la posició.
+     * @return El hash, que depèn només de les fitxes de cada casella.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Retorna la clau canònica de la posició: el menor dels hash de la
+     * posició i de la seva reflectida, que és el mateix per a totes dues.
+     * @return La clau canònica.
+     */
+    public long getClauCanonica() {
+        return Math.min(hash, hashMirall);
+    }
+
+    /**
+     * Passa una columna de la posició a la posició canònica, o al revés: si
+     * la clau canònica és la de la reflectida, la columna es reflecteix. La
+     * transformació és la seva pròpia inversa. Els valors que no són columnes
+     * (per exemple els que indiquen que no hi ha moviment) no es toquen.
+     * @param col La columna.
+     * @return La columna corresponent a l'altra orientació.
+     */
+    public int orientaColumna(int col) {
+        return (hashMirall < hash && col >= 0 && col < MIDA) ? MIDA - 1 - col : col;
+    }
+
+    /**
+     * Retorna quantes fitxes hi ha a una columna.
+     * @param col La columna.
+     * @return L'alçada de la columna.
+     */
+    public int getAltura(int col) {
+        return altura[col];
+    }
+
+    /**
+     * Indica si encara hi cap una fitxa a la columna.
+     * @param col La columna.
+     * @return true si es pot tirar a la columna.
+     */
+    public boolean movpossible(int col) {
+        return altura[col] < MIDA;
+    }
+
+    /**
+     * Indica si queda alguna columna lliure.
+     * @return true si el tauler no és ple.
+     */
+    public boolean espotmoure() {
+        return nFitxes < MIDA * MIDA;
+    }
+
+    /**
+     * Retorna quantes caselles queden lliures.
+     * @return El nombre de caselles buides.
+     */
+    public int casellesBuides() {
+        return MIDA * MIDA - nFitxes;
+    }
+
+    /**
+     * Afegeix una fitxa a una columna. No comprova que hi càpiga.
+     * @param col La columna.
+     * @param color El color de la fitxa.
+     */
+    public void afegeix(int col, int color) {
+        int casella = col * MIDA + altura[col];
+        int mirall = (MIDA - 1 - col) * MIDA + altura[col];
+        long bit = 1L << casella;
+        if (color == 1) {
+            fitxesVermelles |= bit;
+            hash ^= ZOBRIST[0][casella];
+            hashMirall ^= ZOBRIST[0][mirall];
+        } else {
+            fitxesBlaves |= bit;
+            hash ^= ZOBRIST[1][casella];
+            hashMirall ^= ZOBRIST[1][mirall];
+        }
+        altura[col]++;
+        nFitxes++;
+    }
+
+    /**
+     * Desfà l'últim moviment fet a una columna.
+     * @param col La columna.
+     */
+    public void treu(int col) {
+        altura[col]--;
+        nFitxes--;
+        int casella = col * MIDA + altura[col];
+        int mirall = (MIDA - 1 - col) * MIDA + altura[col];
+        long bit = 1L << casella;
+        if ((fitxesVermelles & bit) != 0) {
+            fitxesVermelles &= ~bit;
+            hash ^= ZOBRIST[0][casella];
+            hashMirall ^= ZOBRIST[0][mirall];
+        } else {
+            fitxesBlaves &= ~bit;
+            hash ^= ZOBRIST[1][casella];
+            hashMirall ^= ZOBRIST[1][mirall];
+        }
+    }
+
+    /**
+     * Mira si la darrera jugada a la columna col pel color clr és guanyadora.
+     * Com que la cerca s'atura en el primer 4 en ratlla, n'hi ha prou amb
+     * mirar si el color té algun 4 en ratlla al tauler.
+     * @param col La columna de la darrera jugada.
+     * @param clr El color que l'ha feta.
+     * @return true si el color té un 4 en ratlla.
+     */
+    public boolean solucio(int col, int clr) {
+        return guanya(clr == 1 ? fitxesVermelles : fitxesBlaves);
+    }
+
+    /**
+     * Retorna les caselles buides on el color faria 4 en ratlla si hi pogués
+     * posar una fitxa, tant si ja són jugables com si no.
+     * @param color El color.
+     * @return Màscara de caselles amb el mateix format que getFitxes.
+     */
+    public long amenaces(int color) {
+        long f = getFitxes(color);
+        long a = amenacesDireccio(f, 1, INICI_VERTICAL)
+               | amenacesDireccio(f, MIDA, INICI_HORITZONTAL)
+               | amenacesDireccio(f, MIDA + 1, INICI_DIAGONAL)
+               | amenacesDireccio(f, MIDA - 1, INICI_ANTIDIAGONAL);
+        return a & ~(fitxesVermelles | fitxesBlaves);
+    }
+
+    /**
+     * Retorna les caselles on es pot posar fitxa ara mateix: la primera
+     * casella lliure de cada columna que no és plena.
+     * @return Màscara de caselles amb el mateix format que getFitxes.
+     */
+    public long jugables() {
+        // Sumar 1 a cada columna no plena porta fins a la seva primera casella lliure
+        long totes = fitxesVermelles | fitxesBlaves;
+        long noPlenes = FILA_INFERIOR & ~((totes & FILA_SUPERIOR) >>> (MIDA - 1));
+        return (totes + noPlenes) & ~totes;
+    }
+
+    /**
+     * Retorna les jugades que no perden a la jugada següent per al color que
+     * mou, suposant que no pot guanyar ara mateix: si el rival té una amenaça
+     * jugable, només la casella que la tapa (i cap si en té dues), i mai la
+     * casella just a sota d'una amenaça del rival, que la deixaria jugable.
+     * @param color El color que mou.
+     * @return Màscara de caselles jugables, buida si totes les jugades perden.
+     */
+    public long jugadesSegures(int color) {
+        long jugables = jugables();
+        long rivals = amenaces(-color);
+        long forcades = rivals & jugables;
+        long candidates = jugables;
+        if (forcades != 0) {
+            if ((forcades & (forcades - 1)) != 0) {
+                return 0; // Dues amenaces jugables: no es poden tapar totes dues
+            }
+            candidates = forcades;
+        }
+        return candidates & ~((rivals >>> 1) & ~FILA_SUPERIOR);
+    }
+
+    /**
+     * Caselles que completen un 4 en ratlla en una direcció: per a cada línia
+     * de quatre que comença a inicis, la casella que falta quan les altres
+     * tres són del color.
+     */
+    private static long amenacesDireccio(long f, int d, long inicis) {
+        long a0 = f & inicis;
+        long a1 = (f >>> d) & inicis;
+        long a2 = (f >>> 2 * d) & inicis;
+        long a3 = (f >>> 3 * d) & inicis;
+        return (a1 & a2 & a3)
+             | ((a0 & a2 & a3) << d)
+             | ((a0 & a1 & a3) << 2 * d)
+             | ((a0 & a1 & a2) << 3 * d);
+    }
+
+    private static boolean guanya(long f) {
+        return (f & (f >>> 1) & (f >>> 2) & (f >>> 3) & INICI_VERTICAL) != 0
+            || (f & (f >>> MIDA) & (f >>> 2 * MIDA) & (f >>> 3 * MIDA) & INICI_HORITZONTAL) != 0
+            || (f & (f >>> (MIDA + 1)) & (f >>> 2 * (MIDA + 1)) & (f >>> 3 * (MIDA + 1)) & INICI_DIAGONAL) != 0
+            || (f & (f >>> (MIDA - 1)) & (f >>> 2 * (MIDA - 1)) & (f >>> 3 * (MIDA - 1)) & INICI_ANTIDIAGONAL) != 0;
+    }
+
+    /**
+     * Calcula les caselles des d'on un 4 en ratlla en la direcció donada
+     * (avançant dCol columnes i dFil files per pas) cap dins del tauler.
+     */
+    private static long mascaraInicis(int dCol, int dFil) {
+        long m = 0;
+        for (int col = 0; col < MIDA; col++) {
+            for (int fil = 0; fil < MIDA; fil++) {
+                int colFi = col + 3 * dCol, filFi = fil + 3 * dFil;
+                if (colFi < MIDA && filFi >= 0 && filFi < MIDA) {
+                    m |= 1L << (col * MIDA + fil);
+                }
+            }
+        }
+        return m;
+    }
+}
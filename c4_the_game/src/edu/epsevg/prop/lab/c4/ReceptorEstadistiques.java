@@ -0,0 +1,21 @@
+package edu.epsevg.prop.lab.c4;
+
+/**
+ * Destí de les estadístiques que MinimaxPlayer genera després de cada cerca.
+ */
+public interface ReceptorEstadistiques {
+
+    /**
+     * Escriu a la consola el resum de cada cerca, com feia MinimaxPlayer abans.
+     */
+    ReceptorEstadistiques CONSOLA = estadistiques -> {
+        System.out.println("# de nodes explorats: " + estadistiques.getFullesAvaluades());
+        System.out.println("columna escollida per fer el moviment: " + estadistiques.getColumna());
+    };
+
+    /**
+     * Rep les estadístiques d'una cerca acabada.
+     * @param estadistiques Les estadístiques; només són vàlides fins a la següent cerca.
+     */
+    void rep(SearchStats estadistiques);
+}
@@ -0,0 +1,18 @@
+package edu.epsevg.prop.lab.c4;
+
+/**
+ * Destí del progrés que un JugadorAturable informa mentre cerca, per exemple
+ * per mostrar-lo a la interfície abans que la cerca acabi.
+ */
+public interface ReceptorProgres {
+
+    /**
+     * Rep l'estat de la cerca en curs. Es crida des del fil que cerca.
+     * @param columna Millor columna trobada fins ara, la que es jugaria si la
+     *        cerca s'aturés ara, o -1 si encara no n'hi ha cap.
+     * @param profunditat Profunditat a la qual s'ha trobat la columna.
+     * @param nodes Nodes visitats (simulacions, a MctsPlayer) des que ha començat la cerca.
+     * @param nodesPerSegon Nodes (o simulacions) per segon fins ara.
+     */
+    void progres(int columna, int profunditat, long nodes, double nodesPerSegon);
+}
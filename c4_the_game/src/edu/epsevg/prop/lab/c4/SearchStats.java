@@ -0,0 +1,271 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.util.Arrays;
+
+/**
+ * Estadístiques d'una cerca de MinimaxPlayer o de MctsPlayer.
+ *
+ * El jugador reutilitza la mateixa instància a cada moviment, de manera que
+ * les dades només són vàlides fins a la següent crida a moviment.
+ */
+public class SearchStats {
+    static final int MAX_PV = Posicio.MIDA * Posicio.MIDA; // Una partida no pot durar més jugades
+
+    long nodes; // Nodes visitats
+    long fullesAvaluades; // Crides a l'heurística
+    long talls; // Podes alfa-beta
+    long tallsPrimerMoviment; // Podes provocades pel primer moviment provat al node
+    long recerques; // Cerques repetides per PVS, per reduccions o per finestres d'aspiració fallides
+    long playouts; // Partides simulades fins al final (MctsPlayer)
+    long consultesTaula; // Consultes a la taula de transposicions
+    long encertsTaula; // Consultes que han trobat la posició
+    int profunditatAssolida; // Profunditat de l'última iteració completada
+    long nanosegons; // Durada de la cerca
+    int columna; // Columna escollida
+    int valor; // Valor de la columna escollida
+    boolean delLlibre; // La columna surt del llibre d'obertures i no s'ha cercat
+    boolean resolta; // La posició s'ha resolt fins al final amb SolucionadorFinal
+    int jugadesFinsAlFinal; // Si s'ha resolt, jugades fins al final amb joc perfecte
+    boolean ponderada; // El resultat ve de la ponderació feta en temps del rival
+    boolean arbrePle; // S'han acabat els nodes de l'arbre i ha deixat de créixer (MctsPlayer)
+    final int[] variacioPrincipal = new int[MAX_PV];
+    int longitudVariacio;
+
+    /**
+     * Deixa totes les estadístiques a zero abans d'una cerca nova.
+     */
+    void reinicia() {
+        nodes = 0;
+        fullesAvaluades = 0;
+        talls = 0;
+        tallsPrimerMoviment = 0;
+        recerques = 0;
+        playouts = 0;
+        consultesTaula = 0;
+        encertsTaula = 0;
+        profunditatAssolida = 0;
+        nanosegons = 0;
+        columna = -1;
+        valor = 0;
+        longitudVariacio = 0;
+        delLlibre = false;
+        resolta = false;
+        jugadesFinsAlFinal = 0;
+        ponderada = false;
+        arbrePle = false;
+    }
+
+    /**
+     * Copia les estadístiques d'una altra cerca.
+     * @param altra Les estadístiques a copiar.
+     */
+    void copia(SearchStats altra) {
+        nodes = altra.nodes;
+        fullesAvaluades = altra.fullesAvaluades;
+        talls = altra.talls;
+        tallsPrimerMoviment = altra.tallsPrimerMoviment;
+        recerques = altra.recerques;
+        playouts = altra.playouts;
+        consultesTaula = altra.consultesTaula;
+        encertsTaula = altra.encertsTaula;
+        profunditatAssolida = altra.profunditatAssolida;
+        nanosegons = altra.nanosegons;
+        columna = altra.columna;
+        valor = altra.valor;
+        System.arraycopy(altra.variacioPrincipal, 0, variacioPrincipal, 0, altra.longitudVariacio);
+        longitudVariacio = altra.longitudVariacio;
+        delLlibre = altra.delLlibre;
+        resolta = altra.resolta;
+        jugadesFinsAlFinal = altra.jugadesFinsAlFinal;
+        ponderada = altra.ponderada;
+        arbrePle = altra.arbrePle;
+    }
+
+    /**
+     * @return Nombre de nodes visitats per la cerca.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return Nombre de posicions avaluades amb l'heurística.
+     */
+    public long getFullesAvaluades() {
+        return fullesAvaluades;
+    }
+
+    /**
+     * @return Nombre de podes alfa-beta.
+     */
+    public long getTalls() {
+        return talls;
+    }
+
+    /**
+     * @return Nombre de podes provocades pel primer moviment provat al node.
+     */
+    public long getTallsPrimerMoviment() {
+        return tallsPrimerMoviment;
+    }
+
+    /**
+     * @return Cerques que s'han hagut de repetir amb la finestra sencera, per
+     * PVS o per finestres d'aspiració, o amb la profunditat sencera, per les
+     * reduccions de les jugades tardanes.
+     */
+    public long getRecerques() {
+        return recerques;
+    }
+
+    /**
+     * @return Partides simulades a l'atzar fins al final, 0 si la cerca no és de Montecarlo.
+     */
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * @return Partides simulades per segon, 0 si la cerca no és de Montecarlo.
+     */
+    public double getPlayoutsPerSegon() {
+        return (nanosegons == 0) ? 0 : playouts * 1e9 / nanosegons;
+    }
+
+    /**
+     * @return Consultes a la taula de transposicions.
+     */
+    public long getConsultesTaula() {
+        return consultesTaula;
+    }
+
+    /**
+     * @return Consultes a la taula de transposicions que han trobat la posició.
+     */
+    public long getEncertsTaula() {
+        return encertsTaula;
+    }
+
+    /**
+     * Proporció de consultes a la taula de transposicions que han trobat la
+     * posició, tant si l'entrada ha permès podar com si només ha donat el
+     * primer moviment a provar.
+     * @return Un valor entre 0 i 1, o 0 si no s'ha consultat la taula.
+     */
+    public double getRatiEncertsTaula() {
+        return (consultesTaula == 0) ? 0 : (double) encertsTaula / consultesTaula;
+    }
+
+    /**
+     * Proporció de podes que ha provocat el primer moviment provat. Com més a
+     * prop d'1, millor és l'ordenació de moviments.
+     * @return Un valor entre 0 i 1, o 0 si no hi ha hagut cap poda.
+     */
+    public double getRatiTalls() {
+        return (talls == 0) ? 0 : (double) tallsPrimerMoviment / talls;
+    }
+
+    /**
+     * @return Profunditat de l'última iteració completada.
+     */
+    public int getProfunditatAssolida() {
+        return profunditatAssolida;
+    }
+
+    /**
+     * @return Durada de la cerca, en nanosegons.
+     */
+    public long getNanosegons() {
+        return nanosegons;
+    }
+
+    /**
+     * @return Columna escollida per la cerca.
+     */
+    public int getColumna() {
+        return columna;
+    }
+
+    /**
+     * @return Valor heurístic de la columna escollida.
+     */
+    public int getValor() {
+        return valor;
+    }
+
+    /**
+     * Indica si la posició s'ha resolt fins al final. En aquest cas getValor
+     * és el valor exacte de SolucionadorFinal en lloc de l'heurístic.
+     * @return Cert si el resultat és exacte.
+     */
+    public boolean isResolta() {
+        return resolta;
+    }
+
+    /**
+     * @return Si la posició s'ha resolt, 1 si es guanya, 0 si són taules i -1 si es perd; si no, 0.
+     */
+    public int getResultat() {
+        return resolta ? Integer.signum(valor) : 0;
+    }
+
+    /**
+     * @return Si la posició s'ha resolt, les jugades dels dos colors fins al
+     * 4 en ratlla o fins omplir el tauler; si no, 0.
+     */
+    public int getJugadesFinsAlFinal() {
+        return jugadesFinsAlFinal;
+    }
+
+    /**
+     * Indica si el resultat s'ha calculat ponderant en temps del rival. En
+     * aquest cas la durada és la de la cerca de fons, no la del moviment.
+     * @return Cert si s'ha aprofitat la ponderació.
+     */
+    public boolean isPonderada() {
+        return ponderada;
+    }
+
+    /**
+     * Indica si la cerca de Montecarlo s'ha quedat sense nodes: a partir
+     * d'aquell moment l'arbre no creix i només es repeteixen simulacions des
+     * de les mateixes fulles. Si passa sovint, cal donar més memòria a
+     * MctsPlayer.
+     * @return Cert si l'arbre s'ha omplert.
+     */
+    public boolean isArbrePle() {
+        return arbrePle;
+    }
+
+    /**
+     * @return Cert si la columna s'ha tret del llibre d'obertures sense cercar.
+     */
+    public boolean isDelLlibre() {
+        return delLlibre;
+    }
+
+    /**
+     * Retorna la variació principal: la seqüència de columnes que la cerca
+     * espera que es juguin, començant per la columna escollida.
+     * @return Una còpia de la variació principal.
+     */
+    public int[] getVariacioPrincipal() {
+        return Arrays.copyOf(variacioPrincipal, longitudVariacio);
+    }
+
+    @Override
+    public String toString() {
+        return "nodes=" + nodes + " fulles=" + fullesAvaluades + " talls=" + talls
+                + String.format(" primerTall=%.3f", getRatiTalls())
+                + (recerques > 0 ? " recerques=" + recerques : "")
+                + (playouts > 0 ? " playouts=" + playouts : "")
+                + (consultesTaula > 0 ? String.format(" encertsTaula=%.3f", getRatiEncertsTaula()) : "")
+                + " profunditat=" + profunditatAssolida + " temps=" + (nanosegons / 1000) + "us"
+                + " columna=" + columna + " valor=" + valor
+                + " pv=" + Arrays.toString(getVariacioPrincipal())
+                + (delLlibre ? " llibre" : "")
+                + (ponderada ? " ponderada" : "")
+                + (arbrePle ? " arbrePle" : "")
+                + (resolta ? " resolta=" + getResultat() + " final=" + jugadesFinsAlFinal : "");
+    }
+}
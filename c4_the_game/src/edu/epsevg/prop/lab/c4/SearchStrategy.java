@@ -0,0 +1,39 @@
+package edu.epsevg.prop.lab.c4;
+
+/**
+ * Estratègia de la cerca negamax de MinimaxPlayer. El cercador fa el recorregut
+ * (jugades, taula de transposicions, ordenació, variació principal) i
+ * l'estratègia només decideix amb quina finestra es cerca cada fill i quan un
+ * node pot deixar de mirar fills.
+ *
+ * Els valors són negamax, des del punt de vista del color que mou al node, i
+ * van en long perquè el negat de Integer.MIN_VALUE no cap en un int.
+ *
+ * @see EstrategiaCerca
+ */
+public interface SearchStrategy {
+
+    /**
+     * Cerca el fill j-èsim d'un node, amb la columna col ja jugada.
+     * @param cercador El cercador, que fa la cerca del fill amb valorFill.
+     * @param t El tauler amb la jugada feta.
+     * @param col La columna que s'acaba de jugar.
+     * @param alfa Cota inferior del node.
+     * @param beta Cota superior del node.
+     * @param profunditat Profunditat que queda per cercar el fill.
+     * @param color Color que mou al node (el que ha jugat col).
+     * @param j Posició del fill en l'ordre de prova, 0 pel primer.
+     * @return El valor del fill des del punt de vista del node.
+     */
+    long cercaFill(MinimaxPlayer cercador, Posicio t, int col, long alfa, long beta,
+                   int profunditat, int color, int j);
+
+    /**
+     * Diu si el node ja pot tornar el seu valor sense mirar més fills.
+     * @param valor Millor valor del node fins ara.
+     * @param beta Cota superior del node.
+     * @param jugador Cert si al node mou el color del jugador.
+     * @return Cert si es poda.
+     */
+    boolean talla(long valor, long beta, boolean jugador);
+}
@@ -0,0 +1,296 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Servidor de moviments per TCP perquè bots externs puguin jugar contra el
+ * motor sense carregar l'API de Jugador al seu procés.
+ *
+ * Cada connexió és una sessió amb el seu propi MinimaxPlayer, atesa per un fil
+ * del servidor, i totes les sessions comparteixen la mateixa taula de
+ * transposicions, guardada fora del heap i sense bloquejos. Com que les
+ * cerques de les sessions se solapen, la generació de la taula no l'avança
+ * cada cerca sinó el servidor, un cop per segon. Una sessió pot
+ * fer tantes peticions com vulgui, una darrere l'altra, fins que envia ADEU
+ * o tanca.
+ *
+ * Protocol binari (big-endian), petició de 23 bytes:
+ * <pre>
+ *   byte  ordre        MOVIMENT o ADEU (ADEU no porta la resta de camps)
+ *   byte  color        color que mou, 1 o -1
+ *   byte  mode         PER_PROFUNDITAT o PER_TEMPS
+ *   int   pressupost   profunditat (1 a 16), o ms per moviment (1 a 60000)
+ *   long  vermelles    fitxes del color 1 (bit = columna * 8 + fila)
+ *   long  blaves       fitxes del color -1
+ * </pre>
+ * Resposta de 23 bytes:
+ * <pre>
+ *   byte  estat        OK, POSICIO_INVALIDA, PARTIDA_ACABADA o PRESSUPOST_INVALID
+ *   byte  columna      columna escollida, -1 si l'estat no és OK
+ *   byte  profunditat  profunditat assolida
+ *   int   valor        valor de la columna per al color que mou
+ *   long  nodes        nodes visitats
+ *   long  nanosegons   temps de cerca al servidor
+ * </pre>
+ * Una cerca per profunditat també té un límit de temps al servidor: si no
+ * acaba en TEMPS_PROFUNDITAT_MS, torna la millor columna de l'última
+ * iteració completada i la profunditat que ha assolit. Així cap client pot
+ * ocupar un fil del servidor indefinidament.
+ */
+public class ServidorMoviments implements AutoCloseable {
+    public static final int PORT_PER_DEFECTE = 4844;
+
+    public static final byte ADEU = 0;
+    public static final byte MOVIMENT = 1;
+
+    public static final byte PER_PROFUNDITAT = 0;
+    public static final byte PER_TEMPS = 1;
+
+    public static final byte OK = 0;
+    public static final byte POSICIO_INVALIDA = 1;
+    public static final byte PARTIDA_ACABADA = 2;
+    public static final byte PRESSUPOST_INVALID = 3;
+
+    private static final int MIDA = Posicio.MIDA;
+    private static final int PROFUNDITAT_MAXIMA = 16; // Més enllà, en un tauler obert la cerca no acaba a temps
+    private static final int TEMPS_MAXIM_MS = 60000;
+    private static final int TEMPS_PROFUNDITAT_MS = 10000; // Límit de les cerques per profunditat
+    private static final long NANOS_PER_GENERACIO = 1000000000L; // Cada quant envelleixen les entrades de la taula
+
+    private final ServerSocket socol;
+    private final ExecutorService sessions;
+    private final TaulaTransposicioAbstracta taula;
+    private final Thread acceptador;
+    private final AtomicInteger sessionsActives = new AtomicInteger();
+    private final AtomicLong peticions = new AtomicLong();
+    private final AtomicLong properaGeneracio = new AtomicLong(System.nanoTime());
+
+    /**
+     * Obre el servidor a la interfície local i comença a acceptar connexions.
+     * @param port Port on escoltar, o 0 perquè el sistema en triï un de lliure.
+     * @param fils Sessions ateses alhora; les connexions de més esperen torn.
+     * @param megabytes Memòria de la taula de transposicions compartida, en MB.
+     * @throws IOException Si no es pot obrir el port.
+     */
+    public ServidorMoviments(int port, int fils, int megabytes) throws IOException {
+        taula = new TaulaTransposicioDirecta(megabytes, TaulaTransposicio.Reemplacament.PROFUNDITAT);
+        socol = new ServerSocket();
+        socol.setReuseAddress(true);
+        socol.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        AtomicInteger n = new AtomicInteger();
+        sessions = Executors.newFixedThreadPool(fils, r -> {
+            Thread fil = new Thread(r, "sessio-" + n.incrementAndGet());
+            fil.setDaemon(true);
+            return fil;
+        });
+        acceptador = new Thread(this::accepta, "servidor-moviments");
+        acceptador.setDaemon(true);
+        acceptador.start();
+    }
+
+    /**
+     * @return El port on escolta el servidor.
+     */
+    public int getPort() {
+        return socol.getLocalPort();
+    }
+
+    /**
+     * @return Sessions connectades ara mateix.
+     */
+    public int getSessionsActives() {
+        return sessionsActives.get();
+    }
+
+    /**
+     * @return Peticions de moviment ateses des que s'ha obert el servidor.
+     */
+    public long getPeticions() {
+        return peticions.get();
+    }
+
+    /**
+     * Deixa d'acceptar connexions i tanca les sessions obertes.
+     */
+    @Override
+    public void close() throws IOException {
+        socol.close();
+        sessions.shutdownNow();
+        try {
+            sessions.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accepta() {
+        while (!socol.isClosed()) {
+            try {
+                Socket connexio = socol.accept();
+                connexio.setTcpNoDelay(true);
+                sessions.execute(() -> atenSessio(connexio));
+            } catch (SocketException ex) {
+                return; // S'ha tancat el servidor
+            } catch (IOException ex) {
+                System.err.println("Error acceptant una connexió: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Atén totes les peticions d'una connexió fins que el client acaba.
+     */
+    private void atenSessio(Socket connexio) {
+        sessionsActives.incrementAndGet();
+        MinimaxPlayer jugador = new MinimaxPlayer(1, false, taula);
+        try (Socket s = connexio;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            while (!Thread.currentThread().isInterrupted()) {
+                byte ordre;
+                try {
+                    ordre = in.readByte();
+                } catch (EOFException ex) {
+                    return; // El client ha tancat
+                }
+                if (ordre != MOVIMENT) {
+                    return;
+                }
+                int color = in.readByte();
+                int mode = in.readByte();
+                int pressupost = in.readInt();
+                long vermelles = in.readLong();
+                long blaves = in.readLong();
+                respon(jugador, color, mode, pressupost, vermelles, blaves, out);
+                out.flush();
+            }
+        } catch (IOException ex) {
+            // Connexió tallada: la sessió s'acaba
+        } finally {
+            sessionsActives.decrementAndGet();
+        }
+    }
+
+    private void respon(MinimaxPlayer jugador, int color, int mode, int pressupost,
+                        long vermelles, long blaves, DataOutputStream out) throws IOException {
+        if ((color != 1 && color != -1) || !esValida(vermelles, blaves)) {
+            escriu(out, POSICIO_INVALIDA, -1, 0, 0, 0, 0);
+            return;
+        }
+        if ((mode == PER_PROFUNDITAT && (pressupost < 1 || pressupost > PROFUNDITAT_MAXIMA))
+                || (mode == PER_TEMPS && (pressupost < 1 || pressupost > TEMPS_MAXIM_MS))
+                || (mode != PER_PROFUNDITAT && mode != PER_TEMPS)) {
+            escriu(out, PRESSUPOST_INVALID, -1, 0, 0, 0, 0);
+            return;
+        }
+        Tauler t = tauler(vermelles, blaves);
+        Posicio p = new Posicio(t);
+        if (!p.espotmoure() || p.solucio(0, 1) || p.solucio(0, -1)) {
+            escriu(out, PARTIDA_ACABADA, -1, 0, 0, 0, 0);
+            return;
+        }
+
+        renovaTaula();
+        if (mode == PER_PROFUNDITAT) {
+            jugador.setPressupost(pressupost, TEMPS_PROFUNDITAT_MS);
+        } else {
+            jugador.setPressupost(MIDA * MIDA, pressupost);
+        }
+        int columna = jugador.moviment(t, color);
+        SearchStats e = jugador.getEstadistiques();
+        peticions.incrementAndGet();
+        escriu(out, OK, columna, e.getProfunditatAssolida(), e.getValor(), e.getNodes(), e.getNanosegons());
+    }
+
+    /**
+     * Comença una generació nova de la taula si ha passat NANOS_PER_GENERACIO
+     * des de l'anterior. Només l'avança una de les sessions que hi arriben alhora.
+     */
+    private void renovaTaula() {
+        long ara = System.nanoTime();
+        long limit = properaGeneracio.get();
+        if (ara - limit >= 0 && properaGeneracio.compareAndSet(limit, ara + NANOS_PER_GENERACIO)) {
+            taula.novaCerca();
+        }
+    }
+
+    private static void escriu(DataOutputStream out, byte estat, int columna, int profunditat,
+                               int valor, long nodes, long nanos) throws IOException {
+        out.writeByte(estat);
+        out.writeByte(columna);
+        out.writeByte(profunditat);
+        out.writeInt(valor);
+        out.writeLong(nodes);
+        out.writeLong(nanos);
+    }
+
+    /**
+     * Comprova que les fitxes no es trepitgen i que cada columna està
+     * plena des de baix sense forats.
+     */
+    static boolean esValida(long vermelles, long blaves) {
+        if ((vermelles & blaves) != 0) {
+            return false;
+        }
+        long totes = vermelles | blaves;
+        for (int col = 0; col < MIDA; col++) {
+            int columna = (int) (totes >>> (col * MIDA)) & 0xFF;
+            if ((columna & (columna + 1)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Tauler tauler(long vermelles, long blaves) {
+        Tauler t = new Tauler(MIDA);
+        for (int col = 0; col < MIDA; col++) {
+            for (int fil = 0; fil < MIDA; fil++) {
+                long bit = 1L << (col * MIDA + fil);
+                if ((vermelles & bit) != 0) {
+                    t.afegeix(col, 1);
+                } else if ((blaves & bit) != 0) {
+                    t.afegeix(col, -1);
+                } else {
+                    break;
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Engega el servidor fins que s'atura el procés:
+     * ServidorMoviments [port] [fils] [megabytesTaula]
+     * @param args Els arguments.
+     * @throws IOException Si no es pot obrir el port.
+     * @throws InterruptedException Si s'interromp el fil principal.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : PORT_PER_DEFECTE;
+        int fils = (args.length > 1) ? Integer.parseInt(args[1]) : 64;
+        int megabytes = (args.length > 2) ? Integer.parseInt(args[2]) : 64;
+        ServidorMoviments servidor = new ServidorMoviments(port, fils, megabytes);
+        System.out.println("Servidor de moviments a 127.0.0.1:" + servidor.getPort()
+                + " (" + fils + " sessions alhora, taula de " + megabytes + " MB)");
+        while (true) {
+            Thread.sleep(10000);
+            System.out.println(servidor.getPeticions() + " peticions, " + servidor.getSessionsActives() + " sessions");
+        }
+    }
+}
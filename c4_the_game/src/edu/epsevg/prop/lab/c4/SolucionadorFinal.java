@@ -0,0 +1,224 @@
+package edu.epsevg.prop.lab.c4;
+
+/**
+ * Solucionador exacte per al final de la partida.
+ *
+ * Quan queden poques caselles buides resol la posició fins al final en lloc
+ * d'avaluar-la amb l'heurística. Fa servir negamax amb finestres nul·les
+ * (una cerca binària sobre el valor, com MTD(f)), una taula de transposicions
+ * pròpia amb cotes del resultat i detecció d'amenaces amb bitboards: si el
+ * color que mou pot guanyar ja, el node no s'expandeix; si el rival té una
+ * amenaça jugable només es prova de tapar-la, i si en té dues la posició
+ * està perduda. Tampoc es juga mai just a sota d'una amenaça del rival.
+ * Una posició i la seva reflectida comparteixen entrada a la taula, amb el
+ * millor moviment guardat en l'orientació de la posició canònica.
+ *
+ * El valor d'una posició per al color que mou és 0 si són taules; si guanya,
+ * el nombre de caselles buides just abans de la seva jugada guanyadora (com
+ * més aviat guanya, més alt), i si perd, el mateix amb signe negatiu.
+ */
+public class SolucionadorFinal {
+    private static final int MIDA = Posicio.MIDA;
+    private static final int[] CENTRE = {3, 4, 2, 5, 1, 6, 0, 7}; // Columnes de dins cap a fora
+    private static final long CLAU_BLAVES = 0x9E3779B97F4A7C15L; // Distingeix les posicions on mou el color -1
+
+    private final TaulaTransposicio taula;
+    private final int[][] ordres = new int[MIDA * MIDA + 1][MIDA]; // Columnes a provar, per caselles buides
+    private final int[][] punts = new int[MIDA * MIDA + 1][MIDA];
+    private long nodes;
+    private int valor;
+
+    /**
+     * Crea un solucionador amb la seva pròpia taula de transposicions.
+     * @param megabytes Memòria per a la taula, en MB.
+     */
+    public SolucionadorFinal(int megabytes) {
+        taula = new TaulaTransposicio(megabytes, TaulaTransposicio.Reemplacament.PROFUNDITAT);
+    }
+
+    /**
+     * Resol la posició i retorna una columna que aconsegueix el millor
+     * resultat possible. Els valors de la taula són exactes, així que es
+     * conserven d'un moviment al següent.
+     * @param p La posició; no ha d'haver acabat.
+     * @param color El color que mou.
+     * @return La millor columna.
+     */
+    public int resol(Posicio p, int color) {
+        nodes = 0;
+        taula.novaCerca();
+        int buides = p.casellesBuides();
+
+        long guanyadores = p.amenaces(color) & p.jugables();
+        if (guanyadores != 0) {
+            valor = buides;
+            return Long.numberOfTrailingZeros(guanyadores) / MIDA;
+        }
+
+        // Cerca binària del valor amb finestres nul·les, provant primer prop de 0
+        int min = -buides, max = buides;
+        while (min < max) {
+            int med = min + (max - min) / 2;
+            if (med <= 0 && min / 2 < med) {
+                med = min / 2;
+            } else if (med >= 0 && max / 2 > med) {
+                med = max / 2;
+            }
+            int r = negamax(p, color, med, med + 1);
+            if (r <= med) {
+                max = r;
+            } else {
+                min = r;
+            }
+        }
+        valor = min;
+
+        // La primera columna que arriba al valor, mirant del centre cap a fora
+        int primera = -1;
+        for (int col : CENTRE) {
+            if (!p.movpossible(col)) continue;
+            if (primera < 0) primera = col;
+            p.afegeix(col, color);
+            int v = -negamax(p, -color, -valor, -valor + 1);
+            p.treu(col);
+            if (v >= valor) {
+                return col;
+            }
+        }
+        return primera;
+    }
+
+    /**
+     * @return Valor exacte de l'última posició resolta, per al color que movia.
+     */
+    public int getValor() {
+        return valor;
+    }
+
+    /**
+     * @return Nodes visitats per l'última resolució.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Calcula quantes jugades, comptant les dels dos colors, falten perquè
+     * acabi la partida si tots dos juguen perfecte.
+     * @param valor El valor de la posició.
+     * @param buides Caselles buides de la posició.
+     * @return Jugades fins al 4 en ratlla, o fins omplir el tauler si són taules.
+     */
+    public static int jugadesFinsAlFinal(int valor, int buides) {
+        return (valor == 0) ? buides : buides - Math.abs(valor) + 1;
+    }
+
+    /**
+     * Negamax amb poda alfa-beta sobre els valors exactes de la posició.
+     * @return El valor per al color que mou si és dins de (alfa, beta), o
+     * una cota del valor si en queda fora.
+     */
+    private int negamax(Posicio p, int color, int alfa, int beta) {
+        ++nodes;
+        int buides = p.casellesBuides();
+        long jugables = p.jugables();
+        if ((p.amenaces(color) & jugables) != 0) {
+            return buides; // Guanya a la jugada
+        }
+
+        long candidates = p.jugadesSegures(color);
+        if (candidates == 0) {
+            return -(buides - 1);
+        }
+        if (buides == 1) {
+            return 0; // L'última casella no fa 4 en ratlla
+        }
+
+        // Ni el color que mou pot guanyar ara ni el rival a la jugada següent
+        int max = buides - 2;
+        int min = -Math.max(buides - 3, 0);
+        if (beta > max) {
+            beta = max;
+            if (alfa >= beta) return beta;
+        }
+        if (alfa < min) {
+            alfa = min;
+            if (alfa >= beta) return alfa;
+        }
+
+        long clau = (color == 1) ? p.getClauCanonica() : p.getClauCanonica() ^ CLAU_BLAVES;
+        long entrada = taula.consulta(clau);
+        int primer = -1;
+        if (entrada != 0) {
+            int v = TaulaTransposicio.valor(entrada);
+            switch (TaulaTransposicio.tipus(entrada)) {
+                case TaulaTransposicio.EXACTE:
+                    return v;
+                case TaulaTransposicio.COTA_INFERIOR:
+                    alfa = Math.max(alfa, v);
+                    break;
+                default:
+                    beta = Math.min(beta, v);
+                    break;
+            }
+            if (alfa >= beta) return v;
+            primer = p.orientaColumna(TaulaTransposicio.millorMoviment(entrada));
+        }
+
+        int alfaInicial = alfa;
+        int[] ordre = ordres[buides];
+        int n = ordena(p, color, candidates, primer, ordre, punts[buides]);
+        int millor = Integer.MIN_VALUE;
+        int millorCol = -1;
+        for (int j = 0; j < n; j++) {
+            int col = ordre[j];
+            p.afegeix(col, color);
+            int v = -negamax(p, -color, -beta, -alfa);
+            p.treu(col);
+            if (v > millor) {
+                millor = v;
+                millorCol = col;
+            }
+            if (v >= beta) break;
+            if (v > alfa) alfa = v;
+        }
+
+        int tipus = (millor <= alfaInicial) ? TaulaTransposicio.COTA_SUPERIOR
+                  : (millor >= beta) ? TaulaTransposicio.COTA_INFERIOR
+                  : TaulaTransposicio.EXACTE;
+        taula.guarda(clau, millor, buides, tipus, p.orientaColumna(millorCol));
+        return millor;
+    }
+
+    /**
+     * Ordena les columnes candidates: primer la de la taula, i després les
+     * que deixen més amenaces pròpies, amb les centrals primer en cas d'empat.
+     * @return El nombre de columnes.
+     */
+    private int ordena(Posicio p, int color, long candidates, int primer, int[] ordre, int[] pts) {
+        int n = 0;
+        if (primer >= 0 && primer < MIDA && p.movpossible(primer) && esCandidata(p, candidates, primer)) {
+            ordre[n++] = primer;
+        }
+        int inici = n;
+        for (int col : CENTRE) {
+            if (col == primer || !p.movpossible(col) || !esCandidata(p, candidates, col)) continue;
+            p.afegeix(col, color);
+            int punt = Long.bitCount(p.amenaces(color));
+            p.treu(col);
+            int j = n++;
+            while (j > inici && pts[j - 1] < punt) {
+                ordre[j] = ordre[j - 1];
+                pts[j] = pts[j - 1];
+                j--;
+            }
+            ordre[j] = col;
+            pts[j] = punt;
+        }
+        return n;
+    }
+
+    private static boolean esCandidata(Posicio p, long candidates, int col) {
+        return (candidates & (1L << (col * MIDA + p.getAltura(col)))) != 0;
+    }
+}
@@ -0,0 +1,58 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.util.Arrays;
+
+/**
+ * Taula de transposicions de mida fixa indexada pel hash de Zobrist, amb les
+ * entrades en arrays del heap. El format de les entrades, el reemplaçament i
+ * la manera de compartir-la entre fils són els de TaulaTransposicioAbstracta;
+ * TaulaTransposicioDirecta guarda les mateixes entrades fora del heap.
+ */
+public class TaulaTransposicio extends TaulaTransposicioAbstracta {
+    private final long[] claus; // clau ^ dades de cada entrada
+    private final long[] dades; // 0 vol dir entrada buida
+    private final int mascara;
+
+    /**
+     * Crea una taula que ocupa com a molt el pressupost de memòria indicat.
+     * @param megabytes Memòria màxima per a la taula, en MB.
+     * @param politica Política de reemplaçament.
+     */
+    public TaulaTransposicio(int megabytes, Reemplacament politica) {
+        super(politica);
+        int n = entrades(megabytes);
+        claus = new long[n];
+        dades = new long[n];
+        mascara = n - 1;
+    }
+
+    @Override
+    public void buida() {
+        Arrays.fill(claus, 0);
+        Arrays.fill(dades, 0);
+    }
+
+    @Override
+    public long consulta(long clau) {
+        int i = (int) clau & mascara;
+        long d = dades[i];
+        return (claus[i] ^ d) == clau ? d : 0;
+    }
+
+    @Override
+    public void guarda(long clau, int valor, int profunditat, int tipus, int moviment) {
+        int i = (int) clau & mascara;
+        long actual = dades[i];
+        if (conserva(actual, claus[i], clau, profunditat)) {
+            return;
+        }
+        long noves = compacta(valor, profunditat, tipus, moviment);
+        dades[i] = noves;
+        claus[i] = clau ^ noves;
+    }
+
+    @Override
+    public int getCapacitat() {
+        return claus.length;
+    }
+}
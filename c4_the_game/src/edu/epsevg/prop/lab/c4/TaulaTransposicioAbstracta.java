@@ -0,0 +1,164 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Part comuna de les taules de transposicions de mida fixa indexades pel
+ * hash de Zobrist: el format de les entrades, la política de reemplaçament i
+ * la generació. On es guarden les entrades ho decideix cada subclasse:
+ * TaulaTransposicio en arrays del heap i TaulaTransposicioDirecta fora del heap.
+ *
+ * Cada entrada guarda el valor d'un node, el tipus de cota (exacte, inferior
+ * o superior), la profunditat a la qual s'ha calculat i el millor moviment.
+ * Les dades d'una entrada es compacten en un sol long perquè consultar i
+ * guardar no reservin memòria.
+ *
+ * La taula es pot compartir entre fils sense bloquejos: a cada entrada es
+ * guarda la clau combinada amb les dades (clau ^ dades), de manera que una
+ * entrada escrita a mitges per dos fils alhora no supera la comprovació de
+ * la clau i es tracta com si no hi fos. La generació, en canvi, només l'ha
+ * d'avançar qui és propietari de la taula: si cada cerca que la comparteix
+ * en comencés una, cada una faria vells els resultats de les altres.
+ */
+public abstract class TaulaTransposicioAbstracta {
+    public static final int EXACTE = 0; // El valor és el minimax del node
+    public static final int COTA_INFERIOR = 1; // El valor real és >= al guardat
+    public static final int COTA_SUPERIOR = 2; // El valor real és <= al guardat
+    public static final int CAP_MOVIMENT = 0xF; // No hi ha millor moviment conegut
+
+    /**
+     * Política de reemplaçament quan dues posicions van a parar a la mateixa entrada.
+     */
+    public enum Reemplacament {
+        /** La darrera posició guardada sempre substitueix l'anterior. */
+        SEMPRE,
+        /** Només se substitueix una entrada de la cerca actual si la nova és igual o més profunda. */
+        PROFUNDITAT
+    }
+
+    protected static final int BYTES_PER_ENTRADA = 2 * Long.BYTES;
+
+    private final Reemplacament politica;
+    private final AtomicInteger generacio = new AtomicInteger(1); // Identifica la cerca que ha escrit cada entrada
+
+    /**
+     * @param politica Política de reemplaçament.
+     */
+    protected TaulaTransposicioAbstracta(Reemplacament politica) {
+        this.politica = politica;
+    }
+
+    /**
+     * Calcula quantes entrades caben en el pressupost de memòria, arrodonit a
+     * una potència de 2 per poder indexar amb una màscara.
+     * @param megabytes Memòria màxima per a la taula, en MB.
+     * @return El nombre d'entrades.
+     */
+    protected static int entrades(int megabytes) {
+        if (megabytes <= 0) {
+            throw new IllegalArgumentException("Cal com a mínim 1 MB per a la taula de transposicions");
+        }
+        long entrades = Long.highestOneBit((long) megabytes * 1024 * 1024 / BYTES_PER_ENTRADA);
+        return (int) Math.min(entrades, 1 << 30);
+    }
+
+    /**
+     * Indica que comença una cerca nova; les entrades antigues passen a ser
+     * reemplaçables sigui quina sigui la seva profunditat. L'ha de cridar
+     * només el propietari de la taula: el jugador que l'ha creada, o bé qui
+     * la reparteix entre diverses cerques (com el servidor de moviments).
+     */
+    public void novaCerca() {
+        generacio.updateAndGet(g -> (g & 0x3F) + 1);
+    }
+
+    /**
+     * Esborra totes les entrades de la taula.
+     */
+    public abstract void buida();
+
+    /**
+     * Busca una posició a la taula.
+     * @param clau El hash de la posició.
+     * @return Les dades compactades de l'entrada, o 0 si no hi és.
+     */
+    public abstract long consulta(long clau);
+
+    /**
+     * Guarda el resultat de la cerca d'una posició.
+     * @param clau El hash de la posició.
+     * @param valor El valor trobat.
+     * @param profunditat La profunditat restant amb què s'ha cercat.
+     * @param tipus EXACTE, COTA_INFERIOR o COTA_SUPERIOR.
+     * @param moviment El millor moviment trobat, o un valor negatiu si no n'hi ha.
+     */
+    public abstract void guarda(long clau, int valor, int profunditat, int tipus, int moviment);
+
+    /**
+     * Retorna el nombre d'entrades de la taula.
+     * @return La capacitat de la taula.
+     */
+    public abstract int getCapacitat();
+
+    /**
+     * Decideix si una entrada ocupada per una altra posició s'ha de conservar
+     * en lloc de guardar-hi la nova, segons la política de reemplaçament.
+     * @param actual Les dades de l'entrada.
+     * @param clauActual La clau combinada de l'entrada (clau ^ dades).
+     * @param clau El hash de la posició nova.
+     * @param profunditat La profunditat de la posició nova.
+     * @return Cert si no s'ha de sobreescriure.
+     */
+    protected boolean conserva(long actual, long clauActual, long clau, int profunditat) {
+        return politica == Reemplacament.PROFUNDITAT && actual != 0 && (clauActual ^ actual) != clau
+                && generacio(actual) == generacio.get() && profunditat(actual) > profunditat;
+    }
+
+    /**
+     * Compacta les dades d'una entrada en un long, amb la generació actual.
+     */
+    protected long compacta(int valor, int profunditat, int tipus, int moviment) {
+        long mov = (moviment < 0) ? CAP_MOVIMENT : moviment;
+        return (valor & 0xFFFFFFFFL)
+             | ((long) (profunditat & 0xFF) << 32)
+             | ((long) tipus << 40)
+             | (mov << 42)
+             | ((long) generacio.get() << 46);
+    }
+
+    /**
+     * @param entrada Les dades d'una entrada.
+     * @return El valor guardat.
+     */
+    public static int valor(long entrada) {
+        return (int) entrada;
+    }
+
+    /**
+     * @param entrada Les dades d'una entrada.
+     * @return La profunditat amb què es va calcular el valor.
+     */
+    public static int profunditat(long entrada) {
+        return (int) (entrada >>> 32) & 0xFF;
+    }
+
+    /**
+     * @param entrada Les dades d'una entrada.
+     * @return EXACTE, COTA_INFERIOR o COTA_SUPERIOR.
+     */
+    public static int tipus(long entrada) {
+        return (int) (entrada >>> 40) & 0x3;
+    }
+
+    /**
+     * @param entrada Les dades d'una entrada.
+     * @return El millor moviment, o CAP_MOVIMENT si no se'n coneix cap.
+     */
+    public static int millorMoviment(long entrada) {
+        return (int) (entrada >>> 42) & 0xF;
+    }
+
+    private static int generacio(long entrada) {
+        return (int) (entrada >>> 46) & 0x7F;
+    }
+}
@@ -0,0 +1,92 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Taula de transposicions guardada fora del heap, en ByteBuffers directes.
+ *
+ * Té les mateixes entrades i la mateixa comprovació amb clau ^ dades que
+ * TaulaTransposicio (les de TaulaTransposicioAbstracta), i com ella es pot
+ * compartir entre tots els fils de cerca sense bloquejos. La diferència és que el recol·lector no la veu:
+ * una taula de molts GB no allarga el heap ni les pauses, i es pot fer tan
+ * gran com -XX:MaxDirectMemorySize permeti.
+ *
+ * Un ByteBuffer no pot passar de 2 GB, així que la taula es divideix en
+ * trossos de com a molt 1 GB. Cada entrada ocupa 16 bytes seguits (la clau
+ * combinada i les dades), de manera que una consulta només toca una línia
+ * de memòria cau. La memòria es torna quan la taula deixa de ser accessible.
+ */
+public class TaulaTransposicioDirecta extends TaulaTransposicioAbstracta {
+    private static final int BITS_TROS = 26; // 2^26 entrades de 16 bytes: 1 GB per tros
+    private static final LongBuffer ZEROS = ByteBuffer.allocateDirect(1 << 20)
+            .order(ByteOrder.nativeOrder()).asLongBuffer(); // Es copia sobre els trossos per buidar-los
+
+    private final LongBuffer[] trossos; // A cada entrada: [2i] = clau ^ dades, [2i + 1] = dades
+    private final int mascara;
+    private final int bitsTros; // log2 de les entrades per tros
+    private final int mascaraTros;
+
+    /**
+     * Crea una taula que ocupa com a molt el pressupost de memòria indicat,
+     * fora del heap.
+     * @param megabytes Memòria màxima per a la taula, en MB.
+     * @param politica Política de reemplaçament.
+     */
+    public TaulaTransposicioDirecta(int megabytes, Reemplacament politica) {
+        super(politica);
+        int n = entrades(megabytes);
+        int perTros = Math.min(n, 1 << BITS_TROS);
+        trossos = new LongBuffer[n / perTros];
+        for (int k = 0; k < trossos.length; k++) {
+            trossos[k] = ByteBuffer.allocateDirect(perTros * BYTES_PER_ENTRADA)
+                    .order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+        mascara = n - 1;
+        bitsTros = Integer.numberOfTrailingZeros(perTros);
+        mascaraTros = perTros - 1;
+    }
+
+    @Override
+    public void buida() {
+        // Còpies en bloc d'un buffer de zeros; duplicate() perquè cap fil comparteixi posicions
+        LongBuffer zeros = ZEROS.duplicate();
+        for (LongBuffer tros : trossos) {
+            LongBuffer desti = tros.duplicate();
+            desti.clear();
+            while (desti.hasRemaining()) {
+                zeros.clear();
+                zeros.limit(Math.min(zeros.capacity(), desti.remaining()));
+                desti.put(zeros);
+            }
+        }
+    }
+
+    @Override
+    public long consulta(long clau) {
+        int i = (int) clau & mascara;
+        LongBuffer tros = trossos[i >>> bitsTros];
+        int j = (i & mascaraTros) << 1;
+        long d = tros.get(j + 1);
+        return (tros.get(j) ^ d) == clau ? d : 0;
+    }
+
+    @Override
+    public void guarda(long clau, int valor, int profunditat, int tipus, int moviment) {
+        int i = (int) clau & mascara;
+        LongBuffer tros = trossos[i >>> bitsTros];
+        int j = (i & mascaraTros) << 1;
+        if (conserva(tros.get(j + 1), tros.get(j), clau, profunditat)) {
+            return;
+        }
+        long noves = compacta(valor, profunditat, tipus, moviment);
+        tros.put(j + 1, noves);
+        tros.put(j, clau ^ noves);
+    }
+
+    @Override
+    public int getCapacitat() {
+        return mascara + 1;
+    }
+}
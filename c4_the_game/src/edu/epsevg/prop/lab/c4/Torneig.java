@@ -0,0 +1,418 @@
+package edu.epsevg.prop.lab.c4;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Torneig sense interfície gràfica entre dos jugadors.
+ *
+ * Juga N partides entre el jugador A i el jugador B en un conjunt de fils,
+ * alternant els colors a cada partida, i en resumeix les victòries, taules i
+ * derrotes d'A, la diferència d'Elo amb l'interval de confiança del 95% i els
+ * percentils del temps per moviment de cada jugador.
+ *
+ * Els jugadors no són segurs entre fils, així que cada fil en crea els seus
+ * amb les fàbriques i els reutilitza per a totes les partides que juga, igual
+ * que Juga2 reutilitza els jugadors quan es torna a jugar.
+ */
+public class Torneig {
+    private static final int MIDA = 8;
+    private static final int MAX_JUGADES_ALEATORIES = 6; // Amb 6 fitxes ningú pot haver fet quatre en ratlla
+
+    private final Supplier<Jugador> fabricaA;
+    private final Supplier<Jugador> fabricaB;
+    private final int partides;
+    private final int fils;
+    private int jugadesAleatories; // Jugades aleatòries a l'inici de cada parella de partides
+    private long llavor; // Llavor de les obertures aleatòries
+    private MetriquesJugador metriquesA; // Si no són null, els jugadors es mesuren amb JugadorInstrumentat
+    private MetriquesJugador metriquesB;
+
+    /**
+     * Crea un torneig.
+     * @param fabricaA Crea instàncies del jugador A.
+     * @param fabricaB Crea instàncies del jugador B.
+     * @param partides Nombre de partides a jugar.
+     * @param fils Nombre de partides que es juguen alhora.
+     */
+    public Torneig(Supplier<Jugador> fabricaA, Supplier<Jugador> fabricaB, int partides, int fils) {
+        if (partides <= 0 || fils <= 0) {
+            throw new IllegalArgumentException("Cal com a mínim una partida i un fil");
+        }
+        this.fabricaA = fabricaA;
+        this.fabricaB = fabricaB;
+        this.partides = partides;
+        this.fils = fils;
+    }
+
+    /**
+     * Fa que cada parella de partides comenci amb unes jugades aleatòries.
+     * Les dues partides de la parella comparteixen l'obertura amb els colors
+     * canviats, de manera que dos jugadors deterministes no repeteixen sempre
+     * la mateixa partida.
+     * @param jugadesAleatories Nombre de jugades aleatòries, entre 0 i 6.
+     * @param llavor Llavor per generar les obertures.
+     */
+    public void setObertures(int jugadesAleatories, long llavor) {
+        if (jugadesAleatories < 0 || jugadesAleatories > MAX_JUGADES_ALEATORIES) {
+            throw new IllegalArgumentException("Les jugades aleatòries han d'estar entre 0 i " + MAX_JUGADES_ALEATORIES);
+        }
+        this.jugadesAleatories = jugadesAleatories;
+        this.llavor = llavor;
+    }
+
+    /**
+     * Fa que cada jugador es mesuri amb un JugadorInstrumentat. Els jugadors
+     * de tots els fils registren a les mateixes mètriques.
+     * @param metriquesA Mètriques del jugador A.
+     * @param metriquesB Mètriques del jugador B.
+     */
+    public void setMetriques(MetriquesJugador metriquesA, MetriquesJugador metriquesB) {
+        this.metriquesA = metriquesA;
+        this.metriquesB = metriquesB;
+    }
+
+    /**
+     * Juga totes les partides del torneig.
+     * @return El resultat del torneig des del punt de vista del jugador A.
+     * @throws InterruptedException Si s'interromp el fil mentre s'espera.
+     */
+    public Resultat juga() throws InterruptedException {
+        ThreadLocal<Jugador[]> jugadors = ThreadLocal.withInitial(() -> new Jugador[]{
+            instrumenta(fabricaA.get(), metriquesA), instrumenta(fabricaB.get(), metriquesB)});
+        ExecutorService pool = Executors.newFixedThreadPool(fils);
+        long inici = System.nanoTime();
+        try {
+            List<Future<Partida>> pendents = new ArrayList<>(partides);
+            for (int i = 0; i < partides; i++) {
+                final int numero = i;
+                pendents.add(pool.submit(() -> jugaPartida(numero, jugadors.get())));
+            }
+            Resultat res = new Resultat();
+            for (Future<Partida> f : pendents) {
+                res.afegeix(f.get());
+            }
+            res.nanosegons = System.nanoTime() - inici;
+            res.tanca();
+            return res;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Una partida ha fallat", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Jugador instrumenta(Jugador jugador, MetriquesJugador metriques) {
+        return (metriques == null) ? jugador : JugadorInstrumentat.embolcalla(jugador, metriques);
+    }
+
+    /**
+     * Juga una partida. A les partides parelles A juga amb vermelles (color 1)
+     * i comença; a les senars juga amb blaves.
+     * @param numero Número de la partida.
+     * @param jugadors Els jugadors A i B del fil actual.
+     * @return El resultat de la partida.
+     */
+    private Partida jugaPartida(int numero, Jugador[] jugadors) {
+        Tauler t = new Tauler(MIDA);
+        int colorA = (numero % 2 == 0) ? 1 : -1;
+        int color = 1;
+
+        Random aleatori = new Random(llavor + numero / 2);
+        for (int i = 0; i < jugadesAleatories; i++) {
+            int col;
+            do {
+                col = aleatori.nextInt(MIDA);
+            } while (!t.movpossible(col));
+            t.afegeix(col, color);
+            color = -color;
+        }
+
+        Partida p = new Partida();
+        while (true) {
+            boolean tornA = (color == colorA);
+            Jugador jugador = tornA ? jugadors[0] : jugadors[1];
+            long abans = System.nanoTime();
+            int col = jugador.moviment(t, color);
+            p.registra(tornA, System.nanoTime() - abans);
+
+            if (col < 0 || col >= MIDA || !t.movpossible(col)) {
+                // Un moviment il·legal perd la partida
+                p.infraccio = true;
+                p.resultat = tornA ? -1 : 1;
+                return p;
+            }
+            t.afegeix(col, color);
+            if (t.solucio(col, color)) {
+                p.resultat = tornA ? 1 : -1;
+                return p;
+            }
+            if (!t.espotmoure()) {
+                p.resultat = 0;
+                return p;
+            }
+            color = -color;
+        }
+    }
+
+    /**
+     * Resultat i temps per moviment d'una partida.
+     */
+    private static class Partida {
+        int resultat; // 1 guanya A, 0 taules, -1 guanya B
+        boolean infraccio; // Algú ha fet un moviment il·legal
+        long[] tempsA = new long[MIDA * MIDA];
+        int nA;
+        long[] tempsB = new long[MIDA * MIDA];
+        int nB;
+
+        void registra(boolean tornA, long nanos) {
+            if (tornA) {
+                tempsA[nA++] = nanos;
+            } else {
+                tempsB[nB++] = nanos;
+            }
+        }
+    }
+
+    /**
+     * Resultat d'un torneig des del punt de vista del jugador A.
+     */
+    public static class Resultat {
+        private int victories;
+        private int taules;
+        private int derrotes;
+        private int infraccions;
+        private long nanosegons;
+        private long[] tempsA = new long[1024];
+        private int nA;
+        private long[] tempsB = new long[1024];
+        private int nB;
+
+        private void afegeix(Partida p) {
+            if (p.resultat > 0) victories++;
+            else if (p.resultat < 0) derrotes++;
+            else taules++;
+            if (p.infraccio) infraccions++;
+            tempsA = copia(tempsA, nA, p.tempsA, p.nA);
+            nA += p.nA;
+            tempsB = copia(tempsB, nB, p.tempsB, p.nB);
+            nB += p.nB;
+        }
+
+        private void tanca() {
+            tempsA = Arrays.copyOf(tempsA, nA);
+            tempsB = Arrays.copyOf(tempsB, nB);
+            Arrays.sort(tempsA);
+            Arrays.sort(tempsB);
+        }
+
+        private static long[] copia(long[] desti, int n, long[] origen, int m) {
+            if (n + m > desti.length) {
+                desti = Arrays.copyOf(desti, Math.max(2 * desti.length, n + m));
+            }
+            System.arraycopy(origen, 0, desti, n, m);
+            return desti;
+        }
+
+        /** @return Partides guanyades per A. */
+        public int getVictories() {
+            return victories;
+        }
+
+        /** @return Partides empatades. */
+        public int getTaules() {
+            return taules;
+        }
+
+        /** @return Partides perdudes per A. */
+        public int getDerrotes() {
+            return derrotes;
+        }
+
+        /** @return Partides acabades per un moviment il·legal. */
+        public int getInfraccions() {
+            return infraccions;
+        }
+
+        /** @return Durada del torneig, en nanosegons. */
+        public long getNanosegons() {
+            return nanosegons;
+        }
+
+        /**
+         * @return Puntuació mitjana d'A: 1 per victòria, 0.5 per taules.
+         */
+        public double getPuntuacio() {
+            return (victories + 0.5 * taules) / (victories + taules + derrotes);
+        }
+
+        /**
+         * @return Diferència d'Elo estimada d'A respecte de B.
+         */
+        public double getElo() {
+            return elo(getPuntuacio());
+        }
+
+        /**
+         * Interval de confiança del 95% de la diferència d'Elo, a partir de
+         * l'error estàndard de la puntuació mitjana.
+         * @return {mínim, màxim}.
+         */
+        public double[] getIntervalElo() {
+            int n = victories + taules + derrotes;
+            double s = getPuntuacio();
+            double variancia = (victories * (1 - s) * (1 - s) + taules * (0.5 - s) * (0.5 - s) + derrotes * s * s) / n;
+            double marge = 1.96 * Math.sqrt(variancia / n);
+            return new double[]{elo(Math.max(0, s - marge)), elo(Math.min(1, s + marge))};
+        }
+
+        /**
+         * Percentil del temps per moviment.
+         * @param jugadorA Cert per al jugador A, fals per al B.
+         * @param percentil Percentil entre 0 i 100.
+         * @return El temps en nanosegons, o 0 si el jugador no ha mogut mai.
+         */
+        public long getPercentilTemps(boolean jugadorA, double percentil) {
+            long[] temps = jugadorA ? tempsA : tempsB;
+            if (temps.length == 0) return 0;
+            int i = (int) Math.ceil(percentil / 100 * temps.length) - 1;
+            return temps[Math.max(0, Math.min(temps.length - 1, i))];
+        }
+
+        private static double elo(double puntuacio) {
+            return -400 * Math.log10(1 / puntuacio - 1);
+        }
+
+        @Override
+        public String toString() {
+            int n = victories + taules + derrotes;
+            double[] interval = getIntervalElo();
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("partides=%d V=%d T=%d D=%d infraccions=%d temps=%.1fs%n",
+                    n, victories, taules, derrotes, infraccions, nanosegons / 1e9));
+            sb.append(String.format("puntuacio=%.3f elo=%.1f [%.1f, %.1f]%n",
+                    getPuntuacio(), getElo(), interval[0], interval[1]));
+            for (int j = 0; j < 2; j++) {
+                boolean a = (j == 0);
+                sb.append(String.format("temps per moviment %s (ms): p50=%.2f p90=%.2f p99=%.2f max=%.2f%n",
+                        a ? "A" : "B",
+                        getPercentilTemps(a, 50) / 1e6, getPercentilTemps(a, 90) / 1e6,
+                        getPercentilTemps(a, 99) / 1e6, getPercentilTemps(a, 100) / 1e6));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Crea una fàbrica de jugadors a partir d'una descripció:
+     * minimax[:profunditat], sensepoda[:profunditat], pvs[:profunditat],
+     * finestres[:profunditat], vectorial[:profunditat], temps[:ms],
+     * selectiva[:ms[:reduccions|extensions]], mcts[:ms], mctsplayouts[:playouts],
+     * profe[:profunditat[:h2]] o aleatori.
+     * @param descripcio La descripció del jugador.
+     * @return La fàbrica del jugador.
+     */
+    public static Supplier<Jugador> fabrica(String descripcio) {
+        String[] parts = descripcio.split(":");
+        final int n = (parts.length > 1) ? Integer.parseInt(parts[1]) : 0;
+        switch (parts[0]) {
+            case "minimax":
+                return () -> new MinimaxPlayer(n > 0 ? n : 5, false);
+            case "sensepoda":
+                return () -> ambEstrategia(new MinimaxPlayer(n > 0 ? n : 5, false), EstrategiaCerca.MINIMAX);
+            case "pvs":
+                return () -> ambEstrategia(new MinimaxPlayer(n > 0 ? n : 5, false), EstrategiaCerca.PVS);
+            case "finestres":
+                return () -> new MinimaxPlayer(n > 0 ? n : 5, false, new AvaluadorFinestres());
+            case "vectorial":
+                return () -> new MinimaxPlayer(n > 0 ? n : 5, false, AvaluadorFinestres.vectorial());
+            case "temps":
+                return () -> senseEstadistiques(new MinimaxPlayer(MIDA * MIDA, n > 0 ? n : 100));
+            case "selectiva":
+                final String tipus = (parts.length > 2) ? parts[2] : "";
+                return () -> {
+                    MinimaxPlayer jugador = senseEstadistiques(new MinimaxPlayer(MIDA * MIDA, n > 0 ? n : 100));
+                    jugador.setReduccions(!tipus.equals("extensions"));
+                    jugador.setExtensions(!tipus.equals("reduccions"));
+                    return jugador;
+                };
+            case "mcts":
+                return () -> new MctsPlayer(n > 0 ? n : 100);
+            case "mctsplayouts":
+                return () -> new MctsPlayer(n > 0 ? n : 20000, 0, 1);
+            case "profe":
+                final boolean h2 = parts.length > 2 && parts[2].equals("h2");
+                return () -> new Profe(n > 0 ? n : 4, h2);
+            case "aleatori":
+                return Aleatori::new;
+            default:
+                throw new IllegalArgumentException("Jugador desconegut: " + descripcio);
+        }
+    }
+
+    private static MinimaxPlayer ambEstrategia(MinimaxPlayer jugador, SearchStrategy estrategia) {
+        jugador.setEstrategia(estrategia);
+        return jugador;
+    }
+
+    private static MinimaxPlayer senseEstadistiques(MinimaxPlayer jugador) {
+        jugador.setReceptorEstadistiques(null);
+        return jugador;
+    }
+
+    /**
+     * Executa un torneig des de la línia d'ordres:
+     * Torneig jugadorA jugadorB [partides] [fils] [jugadesAleatories] [llavor] [fitxerMetriques]
+     * Les mètriques dels jugadors es publiquen per JMX i, si es dona un fitxer,
+     * s'hi bolquen cada 10 segons (en JSON si acaba en .json i en CSV si no).
+     * @param args Els arguments.
+     * @throws InterruptedException Si s'interromp el torneig.
+     * @throws IOException Si no es pot obrir el fitxer de mètriques.
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        if (args.length < 2) {
+            System.out.println("Ús: Torneig jugadorA jugadorB [partides] [fils] [jugadesAleatories] [llavor] [fitxerMetriques]");
+            System.out.println("Jugadors: minimax[:prof], sensepoda[:prof], pvs[:prof], finestres[:prof], vectorial[:prof], temps[:ms], selectiva[:ms[:reduccions|extensions]], mcts[:ms], mctsplayouts[:n], profe[:prof[:h2]], aleatori");
+            return;
+        }
+        int partides = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+        int fils = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        Torneig torneig = new Torneig(fabrica(args[0]), fabrica(args[1]), partides, fils);
+        if (args.length > 4) {
+            torneig.setObertures(Integer.parseInt(args[4]), (args.length > 5) ? Long.parseLong(args[5]) : 0);
+        }
+        MetriquesJugador metriquesA = new MetriquesJugador("A " + args[0]);
+        MetriquesJugador metriquesB = new MetriquesJugador("B " + args[1]);
+        metriquesA.registraJmx();
+        metriquesB.registraJmx();
+        torneig.setMetriques(metriquesA, metriquesB);
+        BolcatMetriques bolcat = null;
+        if (args.length > 6) {
+            BolcatMetriques.Format format = args[6].endsWith(".json") ? BolcatMetriques.Format.JSON : BolcatMetriques.Format.CSV;
+            bolcat = new BolcatMetriques(Arrays.asList(metriquesA, metriquesB), args[6], format, 10);
+        }
+
+        System.out.println(args[0] + " contra " + args[1]);
+        try {
+            System.out.print(torneig.juga());
+        } finally {
+            if (bolcat != null) {
+                bolcat.close();
+            }
+        }
+        for (MetriquesJugador m : Arrays.asList(metriquesA, metriquesB)) {
+            System.out.printf("%s: %.0f nodes/s, ramificacio %.2f, profunditat %.1f (max %d), primer tall %.3f%n",
+                    m.getNom(), m.getNodesPerSegon(), m.getFactorRamificacio(), m.getProfunditatMitjana(),
+                    m.getProfunditatMaxima(), m.getRatiTallsPrimerMoviment());
+        }
+    }
+}